@@ -0,0 +1,119 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.wysohn.triggerreactor.core.script.Token;
+import io.github.wysohn.triggerreactor.core.script.Token.Type;
+import io.github.wysohn.triggerreactor.core.script.compiler.Compiler;
+import io.github.wysohn.triggerreactor.core.script.compiler.Program;
+import io.github.wysohn.triggerreactor.core.script.lexer.Lexer;
+import io.github.wysohn.triggerreactor.core.script.parser.Parser;
+
+/**
+ * Compares a java.util.Stack of Tokens with {@link ValueStack}. The first two benchmarks do what
+ * 'sum = sum + i' does to the operand stack; the others run a whole script with and without the pool.
+ * <p>
+ * tokenStack is a synthetic stand-in for how the old interpreter used its Stack&lt;Token&gt;. It doesn't
+ * run the old interpreter, so it only compares the stacks, not the interpreters.
+ * @author wysohn
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class StackBenchmark {
+    private static final int LOOP = 100;
+
+    private final Stack<Token> tokenStack = new Stack<>();
+    private final ValueStack valueStack = new ValueStack(2);
+
+    private Program program;
+    private ValueStackPool pool;
+
+    @Setup
+    public void setup() throws Exception {
+        Lexer lexer = new Lexer(""
+                + "sum = 0\n"
+                + "FOR i = 0:100\n"
+                + "    sum = sum + i * 2\n"
+                + "ENDFOR\n", Charset.forName("UTF-8"));
+        program = new Compiler(new Parser(lexer).parse()).compile();
+        pool = new ValueStackPool(program.maxStack);
+    }
+
+    @Benchmark
+    public int tokenStack() {
+        int sum = 0;
+        for(int i = 0; i < LOOP; i++){
+            tokenStack.push(new Token(Type.INTEGER, sum));
+            tokenStack.push(new Token(Type.INTEGER, i));
+            Token right = tokenStack.pop();
+            Token left = tokenStack.pop();
+            tokenStack.push(new Token(Type.INTEGER, left.toInt() + right.toInt()));
+            sum = tokenStack.pop().toInt();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int valueStack() {
+        int sum = 0;
+        for(int i = 0; i < LOOP; i++){
+            valueStack.pushInt(sum);
+            valueStack.pushInt(i);
+            int right = valueStack.popInt();
+            int left = valueStack.popInt();
+            valueStack.pushInt(left + right);
+            sum = valueStack.popInt();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Object interpret() throws Exception {
+        Interpreter interpreter = new Interpreter(program, new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), null);
+        interpreter.startWithContext(null);
+        return interpreter.getVars().get("sum");
+    }
+
+    @Benchmark
+    public Object interpretPooled() throws Exception {
+        Interpreter interpreter = new Interpreter(program, new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), null);
+        interpreter.setStackPool(pool);
+        interpreter.startWithContext(null);
+        return interpreter.getVars().get("sum");
+    }
+}
@@ -106,7 +106,9 @@ import io.github.wysohn.triggerreactor.core.bridge.IInventory;
 import io.github.wysohn.triggerreactor.core.bridge.IItemStack;
 import io.github.wysohn.triggerreactor.core.bridge.event.IEvent;
 import io.github.wysohn.triggerreactor.core.bridge.player.IPlayer;
+import io.github.wysohn.triggerreactor.core.main.MainThreadQueue;
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
+import io.github.wysohn.triggerreactor.core.main.TriggerWorkerPool;
 import io.github.wysohn.triggerreactor.core.manager.AbstractAreaSelectionManager;
 import io.github.wysohn.triggerreactor.core.manager.AbstractExecutorManager;
 import io.github.wysohn.triggerreactor.core.manager.AbstractPermissionManager;
@@ -305,6 +307,27 @@ public class JavaPluginBridge extends TriggerReactor implements Plugin{
         Bukkit.getScheduler().scheduleSyncRepeatingTask(bukkitPlugin, tpsHelper, 100L, 1L);
 
         FileConfiguration config = plugin.getConfig();
+        if(!config.isSet(TriggerWorkerPool.CONFIG_THREADS))
+            config.set(TriggerWorkerPool.CONFIG_THREADS, TriggerWorkerPool.DEFAULT_THREADS);
+        if(!config.isSet(TriggerWorkerPool.CONFIG_QUEUE_SIZE))
+            config.set(TriggerWorkerPool.CONFIG_QUEUE_SIZE, TriggerWorkerPool.DEFAULT_QUEUE_SIZE);
+        if(!config.isSet(TriggerWorkerPool.CONFIG_MAX_PER_TRIGGER))
+            config.set(TriggerWorkerPool.CONFIG_MAX_PER_TRIGGER, TriggerWorkerPool.DEFAULT_MAX_PER_TRIGGER);
+        if(!config.isSet(TriggerWorkerPool.CONFIG_REJECTION_POLICY))
+            config.set(TriggerWorkerPool.CONFIG_REJECTION_POLICY, TriggerWorkerPool.RejectionPolicy.DISCARD.name());
+        if(!config.isSet(TriggerWorkerPool.CONFIG_VIRTUAL_THREADS))
+            config.set(TriggerWorkerPool.CONFIG_VIRTUAL_THREADS, false);
+        if(!config.isSet(MainThreadQueue.CONFIG_BUDGET))
+            config.set(MainThreadQueue.CONFIG_BUDGET, MainThreadQueue.DEFAULT_BUDGET);
+        plugin.saveConfig();
+
+        Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                getMainThreadQueue().drain();
+            }
+        }, 1L, 1L);
+
         if(config.getBoolean("Mysql.Enable", false)) {
             try {
                 plugin.getLogger().info("Initializing Mysql support...");
@@ -349,7 +372,8 @@ public class JavaPluginBridge extends TriggerReactor implements Plugin{
 
     public void onDisable(JavaPlugin plugin){
         getLogger().info("Finalizing the scheduled script executions...");
-        cachedThreadPool.shutdown();
+        shutdownWorkerPool();
+        shutdownMainThreadQueue();
         bungeeConnectionThread.interrupt();
         getLogger().info("Shut down complete!");
     }
@@ -520,7 +544,7 @@ public class JavaPluginBridge extends TriggerReactor implements Plugin{
                         if(trigger.isSync()){
                             trigger.activate(e, interpreter.getVars());
                         }else{//use snapshot to avoid concurrent modification
-                            trigger.activate(e, new HashMap<>(interpreter.getVars()));
+                            trigger.activate(e, trigger.snapshotVars(interpreter.getVars()));
                         }
 
                         return true;
@@ -598,7 +622,7 @@ public class JavaPluginBridge extends TriggerReactor implements Plugin{
                         if(trigger.isSync()){
                             trigger.activate(e, interpreter.getVars());
                         }else{//use snapshot to avoid concurrent modification
-                            trigger.activate(e, new HashMap<>(interpreter.getVars()));
+                            trigger.activate(e, trigger.snapshotVars(interpreter.getVars()));
                         }
 
                         return true;
@@ -884,7 +908,12 @@ public class JavaPluginBridge extends TriggerReactor implements Plugin{
 
     @Override
     public <T> Future<T> callSyncMethod(Callable<T> call) {
-        return Bukkit.getScheduler().callSyncMethod(bukkitPlugin, call);
+        return callSyncMethod(call, MainThreadQueue.Lane.BACKGROUND);
+    }
+
+    @Override
+    public <T> Future<T> callSyncMethod(Callable<T> call, MainThreadQueue.Lane lane) {
+        return getMainThreadQueue().submit(call, lane);
     }
 
     @Override
@@ -27,30 +27,42 @@ public interface BukkitScriptEngineInitializer extends IScriptEngineInitializer
 
     @Override
     default void extractCustomVariables(Map<String, Object> variables, Object e) {
+        Object player = findCustomPlayer(e);
+        if(player != null)
+            variables.put("player", player);
+    }
+
+    /**
+     * Find the player of the events which don't have the 'player' field, or keep it in another field.
+     * @param e the event
+     * @return the player; null if the event is not one of them or there is no player.
+     */
+    static Object findCustomPlayer(Object e) {
         if(e instanceof InventoryInteractEvent){
             if(((InventoryInteractEvent) e).getWhoClicked() instanceof Player)
-                variables.put("player", ((InventoryInteractEvent) e).getWhoClicked());
+                return ((InventoryInteractEvent) e).getWhoClicked();
         } else if(e instanceof InventoryCloseEvent){
             if(((InventoryCloseEvent) e).getPlayer() instanceof Player)
-                variables.put("player", ((InventoryCloseEvent) e).getPlayer());
+                return ((InventoryCloseEvent) e).getPlayer();
         } else if(e instanceof InventoryOpenEvent){
             if(((InventoryOpenEvent) e).getPlayer() instanceof Player)
-                variables.put("player", ((InventoryOpenEvent) e).getPlayer());
+                return ((InventoryOpenEvent) e).getPlayer();
         } else if(e instanceof PlayerDeathEvent) {
-            variables.put("player", ((PlayerDeathEvent) e).getEntity());
+            return ((PlayerDeathEvent) e).getEntity();
         } else if(e instanceof EntityEvent) { //Some EntityEvent use entity field to store Player instance.
             Entity entity = ((EntityEvent) e).getEntity();
             if(entity instanceof Player) {
-                variables.put("player", entity);
+                return entity;
             }
         } else if(e instanceof BlockEvent) {
             try {
                 Method m = e.getClass().getMethod("getPlayer");
-                variables.put("player", m.invoke(e));
+                return m.invoke(e);
             } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e1) {
-                return;
+                return null;
             }
         }
+        return null;
     }
 
     @Override
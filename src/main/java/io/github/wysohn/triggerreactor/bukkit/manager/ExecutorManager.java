@@ -46,6 +46,7 @@ public class ExecutorManager extends AbstractExecutorManager implements BukkitSc
         this.executorFolder = new File(plugin.getDataFolder(), "Executor");
         JarUtil.copyFolderFromJar("Executor", plugin.getDataFolder(), CopyOption.REPLACE_IF_EXIST);
 
+        NativeExecutors.registerAll(this);
         reload();
     }
 
@@ -58,19 +59,15 @@ public class ExecutorManager extends AbstractExecutorManager implements BukkitSc
             }
         };
 
-        jsExecutors.clear();
-        for(File file : executorFolder.listFiles(filter)){
-            try {
-                reloadExecutors(file, filter);
-            } catch (ScriptException | IOException e) {
-                e.printStackTrace();
-                plugin.getLogger().warning("Could not load executor "+file.getName());
-                continue;
-            }
+        try {
+            reloadExecutors(executorFolder, filter);
+        } catch (IOException e) {
+            e.printStackTrace();
+            plugin.getLogger().warning("Could not load executors in "+executorFolder);
         }
 
         //manually add CMDOP after reload is done
-        this.jsExecutors.put("CMDOP", new Executor() {
+        registerNative("CMDOP", new Executor() {
 
             @Override
             protected Integer execute(boolean sync, Object e, Object... args) throws Exception {
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.bukkit.manager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import io.github.wysohn.triggerreactor.bukkit.tools.BukkitUtil;
+import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
+import io.github.wysohn.triggerreactor.core.manager.AbstractExecutorManager;
+import io.github.wysohn.triggerreactor.core.manager.AbstractExecutorManager.NativeExecutor;
+import io.github.wysohn.triggerreactor.core.script.interpreter.Executor;
+import io.github.wysohn.triggerreactor.core.script.interpreter.ThreadAffinity;
+import io.github.wysohn.triggerreactor.tools.VariableExtractor;
+import me.clip.placeholderapi.PlaceholderAPI;
+
+/**
+ * Java implementations of the most used Executors. They do exactly what the .js files of the same names do.
+ * @author wysohn
+ *
+ */
+final class NativeExecutors {
+    //only the 'player' field of the events
+    private static final ClassValue<VariableExtractor> PLAYER_EXTRACTORS = new ClassValue<VariableExtractor>(){
+        @Override
+        protected VariableExtractor computeValue(Class<?> type) {
+            return VariableExtractor.of(type).select(new String[]{"player"});
+        }
+    };
+
+    private NativeExecutors() {
+
+    }
+
+    static void registerAll(AbstractExecutorManager manager) {
+        manager.registerNative("MESSAGE", new Message());
+        manager.registerNative("BROADCAST", new Broadcast());
+        manager.registerNative("TP", new Teleport());
+    }
+
+    /**
+     * Find the 'player' variable the .js file would see in the context. The field is read directly, so
+     * nothing is allocated for the events with the 'player' field.
+     * @param e the context
+     * @return the player; null if there is no player in the context.
+     */
+    static Player findPlayer(Object e) {
+        if(e == null)
+            return null;
+
+        //same precedence as the .js files: the custom variables overwrite the fields
+        Object player = BukkitScriptEngineInitializer.findCustomPlayer(e);
+        if(player == null)
+            player = PLAYER_EXTRACTORS.get(e.getClass()).extract(e, "player");
+
+        return player instanceof Player ? (Player) player : null;
+    }
+
+    /**
+     * Same as {@link #findPlayer(Object)}, but fails like the .js file fails when it reads the
+     * undefined 'player' variable.
+     * @param e the context
+     * @return the player
+     * @throws IllegalStateException if there is no player in the context
+     */
+    static Player requirePlayer(Object e) {
+        Player player = findPlayer(e);
+        if(player == null)
+            throw new IllegalStateException("\"player\" is not defined");
+        return player;
+    }
+
+    private static String translate(Player player, String text) {
+        if(Bukkit.getPluginManager().isPluginEnabled("PlaceholderAPI")){
+            return PlaceholderAPI.setPlaceholders(player, text);
+        }else{
+            return ChatColor.translateAlternateColorCodes('&', text);
+        }
+    }
+
+    private static class Message extends NativeExecutor{
+        public Message() {
+            super("MESSAGE", ThreadAffinity.ASYNC);
+        }
+
+        //the PlaceholderAPI expansions usually read the server state, which is not safe off the server thread
+        @Override
+        public ThreadAffinity getThreadAffinity() {
+            if(Bukkit.getPluginManager().isPluginEnabled("PlaceholderAPI"))
+                return ThreadAffinity.MAIN_THREAD;
+
+            return super.getThreadAffinity();
+        }
+
+        @Override
+        protected Integer run(Object e, Object[] args) throws Exception {
+            if(args.length == 0)
+                return null;
+
+            Player player = requirePlayer(e);
+            for(int i = 0; i < args.length; i++){
+                player.sendMessage(translate(player, String.valueOf(args[i])));
+            }
+            return null;
+        }
+    }
+
+    private static class Broadcast extends NativeExecutor{
+        public Broadcast() {
+            super("BROADCAST", ThreadAffinity.MAIN_THREAD);
+        }
+
+        @Override
+        protected Integer run(Object e, Object[] args) throws Exception {
+            StringBuilder builder = new StringBuilder();
+            for(int i = 0; i < args.length; i++)
+                builder.append(args[i]);
+
+            String str = ChatColor.translateAlternateColorCodes('&', builder.toString());
+
+            boolean placeholderAPI = Bukkit.getPluginManager().isPluginEnabled("PlaceholderAPI");
+            for(Player p : BukkitUtil.getOnlinePlayers()){
+                if(placeholderAPI){
+                    p.sendMessage(PlaceholderAPI.setPlaceholders(p, str));
+                }else{
+                    p.sendMessage(str);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Teleport extends NativeExecutor{
+        public Teleport() {
+            super("TP", ThreadAffinity.MAIN_THREAD);
+        }
+
+        @Override
+        protected Integer run(Object e, Object[] args) throws Exception {
+            if(args.length == 3){
+                Player player = requirePlayer(e);
+                player.teleport(new Location(player.getWorld(), toDouble(args[0]), toDouble(args[1]), toDouble(args[2])));
+                return null;
+            }else if(args.length == 4){
+                Player player = requirePlayer(e);
+                Player target = Bukkit.getPlayer(String.valueOf(args[3]));
+                target.teleport(new Location(player.getWorld(), toDouble(args[0]), toDouble(args[1]), toDouble(args[2])));
+                return null;
+            }else if(args.length == 1){
+                Player player = requirePlayer(e);
+                player.teleport((Location) args[0]);
+                return null;
+            }else{
+                TriggerReactor.getInstance().getLogger().warning("Teleport Cancelled. Invalid arguments");
+                return Executor.STOP;
+            }
+        }
+
+        private static double toDouble(Object value) {
+            if(value instanceof Number)
+                return ((Number) value).doubleValue();
+            else
+                return Double.parseDouble(String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.bukkit.manager;
+
+import org.bukkit.entity.Player;
+
+import io.github.wysohn.triggerreactor.core.manager.AbstractPlaceholderManager;
+import io.github.wysohn.triggerreactor.core.manager.AbstractPlaceholderManager.NativePlaceholder;
+import io.github.wysohn.triggerreactor.core.script.interpreter.ThreadAffinity;
+
+/**
+ * Java implementations of the most used Placeholders. They do exactly what the .js files of the same names do.
+ * @author wysohn
+ *
+ */
+final class NativePlaceholders {
+    private NativePlaceholders() {
+
+    }
+
+    static void registerAll(AbstractPlaceholderManager manager) {
+        manager.registerNative("playername", new PlayerPlaceholder("playername", ThreadAffinity.ASYNC){
+            @Override
+            protected Object replace(Player player, Object[] args) {
+                return player.getName();
+            }
+        });
+        manager.registerNative("playeruuid", new PlayerPlaceholder("playeruuid", ThreadAffinity.ASYNC){
+            @Override
+            protected Object replace(Player player, Object[] args) {
+                return player.getUniqueId().toString();
+            }
+        });
+        manager.registerNative("worldname", new PlayerPlaceholder("worldname", ThreadAffinity.MAIN_THREAD){
+            @Override
+            protected Object replace(Player player, Object[] args) {
+                return player.getWorld().getName();
+            }
+        });
+        manager.registerNative("x", new PlayerPlaceholder("x", ThreadAffinity.MAIN_THREAD){
+            @Override
+            protected Object replace(Player player, Object[] args) {
+                return player.getLocation().getBlockX();
+            }
+        });
+        manager.registerNative("y", new PlayerPlaceholder("y", ThreadAffinity.MAIN_THREAD){
+            @Override
+            protected Object replace(Player player, Object[] args) {
+                return player.getLocation().getBlockY();
+            }
+        });
+        manager.registerNative("z", new PlayerPlaceholder("z", ThreadAffinity.MAIN_THREAD){
+            @Override
+            protected Object replace(Player player, Object[] args) {
+                return player.getLocation().getBlockZ();
+            }
+        });
+    }
+
+    /**
+     * Placeholder which is replaced to null if there is no player in the context.
+     */
+    private static abstract class PlayerPlaceholder extends NativePlaceholder{
+        public PlayerPlaceholder(String placeholderName, ThreadAffinity affinity) {
+            super(placeholderName, affinity);
+        }
+
+        @Override
+        protected Object replace(Object context, Object[] args) throws Exception {
+            Player player = NativeExecutors.findPlayer(context);
+            if(player == null)
+                return null;
+
+            return replace(player, args);
+        }
+
+        protected abstract Object replace(Player player, Object[] args);
+    }
+}
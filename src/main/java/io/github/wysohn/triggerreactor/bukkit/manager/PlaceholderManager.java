@@ -36,6 +36,7 @@ public class PlaceholderManager extends AbstractPlaceholderManager implements Bu
         this.placeholderFolder = new File(plugin.getDataFolder(), "Placeholder");
         JarUtil.copyFolderFromJar("Placeholder", plugin.getDataFolder(), CopyOption.REPLACE_IF_EXIST);
 
+        NativePlaceholders.registerAll(this);
         reload();
     }
 
@@ -48,15 +49,11 @@ public class PlaceholderManager extends AbstractPlaceholderManager implements Bu
             }
         };
 
-        jsPlaceholders.clear();
-        for(File file : placeholderFolder.listFiles(filter)){
-            try {
-                reloadPlaceholders(file, filter);
-            } catch (ScriptException | IOException e) {
-                e.printStackTrace();
-                plugin.getLogger().warning("Could not load placeholder "+file.getName());
-                continue;
-            }
+        try {
+            reloadPlaceholders(placeholderFolder, filter);
+        } catch (IOException e) {
+            e.printStackTrace();
+            plugin.getLogger().warning("Could not load placeholders in "+placeholderFolder);
         }
     }
 
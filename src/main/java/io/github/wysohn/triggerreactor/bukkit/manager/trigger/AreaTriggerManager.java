@@ -18,15 +18,21 @@ package io.github.wysohn.triggerreactor.bukkit.manager.trigger;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.event.EventHandler;
@@ -46,6 +52,13 @@ import io.github.wysohn.triggerreactor.core.manager.trigger.AbstractAreaTriggerM
 import io.github.wysohn.triggerreactor.tools.FileUtil;
 
 public class AreaTriggerManager extends AbstractAreaTriggerManager implements BukkitTriggerManager{
+    //how long the tracking thread waits for the snapshot
+    private static final long SNAPSHOT_TIMEOUT = 5000L;
+
+    //written by the server thread, and read by the tracking thread after the server thread is done with it
+    private final EntitySnapshot snapshot = new EntitySnapshot();
+    //only used by the server thread
+    private final Location locationBuffer = new Location(null, 0, 0, 0);
 
     public AreaTriggerManager(TriggerReactor plugin) {
         super(plugin, new CommonFunctions(plugin), new File(plugin.getDataFolder(), "AreaTrigger"));
@@ -55,44 +68,32 @@ public class AreaTriggerManager extends AbstractAreaTriggerManager implements Bu
             @Override
             public void run() {
                 while(plugin.isEnabled() && !Thread.interrupted()) {
-                    //track entity locations
-                    for(World w : Bukkit.getWorlds()) {
-                        for(Entity e : w.getEntities()) {
-                            UUID uuid = e.getUniqueId();
-
-                            Future<Boolean> future = plugin.callSyncMethod(new Callable<Boolean>() {
-
-                                @Override
-                                public Boolean call() throws Exception {
-                                    return !e.isDead() && e.isValid();
-                                }
-
-                            });
-
-                            boolean valid = false;
-                            try {
-                                valid = future.get();
-                            } catch (InterruptedException e1) {
-                            } catch (ExecutionException e1) {
-                                e1.printStackTrace();
-                            }
-
-                            if(!valid)
-                                continue;
-
-                            if(!entityLocationMap.containsKey(uuid))
-                                continue;
-
-                            SimpleLocation previous = entityLocationMap.get(uuid);
-                            SimpleLocation current = LocationUtil.convertToSimpleLocation(e.getLocation());
+                    //copy the entity locations in one server thread task, then compare them here
+                    Future<Void> future = null;
+                    try {
+                        future = plugin.callSyncMethod(new Callable<Void>() {
 
-                            //update location if equal
-                            if(!previous.equals(current)) {
-                                entityLocationMap.put(uuid, current);
-                                onEntityBlockMoveAsync(e, previous, current);
+                            @Override
+                            public Void call() throws Exception {
+                                takeSnapshot();
+                                return null;
                             }
 
-                        }
+                        });
+
+                        future.get(SNAPSHOT_TIMEOUT, TimeUnit.MILLISECONDS);
+                        trackEntities();
+                    } catch (InterruptedException e1) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException e1) {
+                        e1.printStackTrace();
+                    } catch (TimeoutException e1) {
+                        //the server is lagging. Skip this sweep
+                        future.cancel(false);
+                    } catch (RejectedExecutionException | CancellationException e1) {
+                        //plugin is disabling
+                        break;
                     }
 
                     try {
@@ -108,6 +109,53 @@ public class AreaTriggerManager extends AbstractAreaTriggerManager implements Bu
         entityTrackingThread.start();
     }
 
+    //server thread
+    private void takeSnapshot() {
+        snapshot.clear();
+        for(World w : Bukkit.getWorlds()) {
+            String world = w.getName();
+            for(Entity e : w.getEntities()) {
+                if(e.isDead() || !e.isValid())
+                    continue;
+
+                UUID uuid = e.getUniqueId();
+                if(!entityLocationMap.containsKey(uuid))
+                    continue;
+
+                Location loc = e.getLocation(locationBuffer);
+                snapshot.add(uuid, world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+            }
+        }
+    }
+
+    //tracking thread
+    private void trackEntities() {
+        for(int i = 0; i < snapshot.size(); i++) {
+            UUID uuid = snapshot.uuids[i];
+            String world = snapshot.worlds[i];
+            int x = snapshot.coords[i * 3];
+            int y = snapshot.coords[i * 3 + 1];
+            int z = snapshot.coords[i * 3 + 2];
+
+            SimpleLocation previous = entityLocationMap.get(uuid);
+            if(previous == null)
+                continue;
+
+            //update location if not equal
+            if(previous.getX() == x && previous.getY() == y && previous.getZ() == z && previous.getWorld().equals(world))
+                continue;
+
+            WeakReference<Entity> ref = entityTrackMap.get(uuid);
+            Entity entity = ref == null ? null : ref.get();
+            if(entity == null)
+                continue;
+
+            SimpleLocation current = new SimpleLocation(world, x, y, z);
+            entityLocationMap.put(uuid, current);
+            onEntityBlockMoveAsync(entity, previous, current);
+        }
+    }
+
     @Override
     public void reload() {
         super.reload();
@@ -115,16 +163,13 @@ public class AreaTriggerManager extends AbstractAreaTriggerManager implements Bu
         //re-register entities
         for(World w : Bukkit.getWorlds()) {
             for(Entity e : w.getEntities()) {
-                UUID uuid = e.getUniqueId();
-
                 if(e.isDead() || !e.isValid())
                     continue;
 
                 SimpleLocation previous = null;
                 SimpleLocation current = LocationUtil.convertToSimpleLocation(e.getLocation());
 
-                entityLocationMap.put(uuid, current);
-                entityTrackMap.put(uuid, new WeakReference<Entity>(e));
+                trackEntity(e, current);
                 onEntityBlockMoveAsync(e, previous, current);
             }
         }
@@ -174,8 +219,7 @@ public class AreaTriggerManager extends AbstractAreaTriggerManager implements Bu
     public void onSpawn(EntitySpawnEvent e) {
         SimpleLocation sloc = LocationUtil.convertToSimpleLocation(e.getLocation());
 
-        entityTrackMap.put(e.getEntity().getUniqueId(), new WeakReference<Entity>(e.getEntity()));
-        entityLocationMap.put(e.getEntity().getUniqueId(), sloc);
+        trackEntity(e.getEntity(), sloc);
 
         Entry<Area, AreaTrigger> entry = getAreaForLocation(sloc);
         if(entry != null) {
@@ -221,4 +265,39 @@ public class AreaTriggerManager extends AbstractAreaTriggerManager implements Bu
         File areafolder = new File(folder, trigger.getTriggerName());
         FileUtil.delete(areafolder);
     }
+
+    /**
+     * Block locations of the tracked entities at one moment. The arrays are reused for every snapshot
+     * and only grow, so taking a snapshot doesn't create garbage once they are large enough.
+     */
+    private static final class EntitySnapshot {
+        private int size = 0;
+        private UUID[] uuids = new UUID[256];
+        private String[] worlds = new String[256];
+        //x, y, z of each entity in a row
+        private int[] coords = new int[256 * 3];
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(UUID uuid, String world, int x, int y, int z) {
+            if(size == uuids.length) {
+                uuids = Arrays.copyOf(uuids, size * 2);
+                worlds = Arrays.copyOf(worlds, size * 2);
+                coords = Arrays.copyOf(coords, size * 2 * 3);
+            }
+
+            uuids[size] = uuid;
+            worlds[size] = world;
+            coords[size * 3] = x;
+            coords[size * 3 + 1] = y;
+            coords[size * 3 + 2] = z;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+    }
 }
@@ -20,7 +20,6 @@ import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.bukkit.Location;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
@@ -64,8 +63,7 @@ public class ClickTriggerManager extends LocationBasedTriggerManager<AbstractLoc
         Player player = e.getPlayer();
         Block clicked = e.getClickedBlock();
 
-        Location loc = clicked.getLocation();
-        ClickTrigger trigger = getTriggerForLocation(loc);
+        ClickTrigger trigger = getTriggerForLocation(clicked);
         if(trigger == null)
             return;
 
@@ -71,7 +71,7 @@ public abstract class LocationBasedTriggerManager<T extends Trigger> extends Abs
         if(clicked == null)
             return;
 
-        T trigger = getTriggerForLocation(clicked.getLocation());
+        T trigger = getTriggerForLocation(clicked);
 
         if(IS != null
                 &&!e.isCancelled()
@@ -205,7 +205,7 @@ public abstract class LocationBasedTriggerManager<T extends Trigger> extends Abs
     public void onBreak(BlockBreakEvent e){
         Block block = e.getBlock();
 
-        T trigger = getTriggerForLocation(block.getLocation());
+        T trigger = getTriggerForLocation(block);
         if(trigger == null)
             return;
 
@@ -222,8 +222,11 @@ public abstract class LocationBasedTriggerManager<T extends Trigger> extends Abs
     }
 
     protected T getTriggerForLocation(Location loc) {
-        SimpleLocation sloc = LocationUtil.convertToSimpleLocation(loc);
-        return getTriggerForLocation(sloc);
+        return getTriggerForLocation(loc.getWorld().getName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+
+    protected T getTriggerForLocation(Block block) {
+        return getTriggerForLocation(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
     }
 
     protected void setTriggerForLocation(Location loc, T trigger) {
@@ -237,7 +240,7 @@ public abstract class LocationBasedTriggerManager<T extends Trigger> extends Abs
     }
 
     protected void showTriggerInfo(ICommandSender sender, Block clicked) {
-        Trigger trigger = getTriggerForLocation(LocationUtil.convertToSimpleLocation(clicked.getLocation()));
+        Trigger trigger = getTriggerForLocation(clicked);
         if(trigger == null){
             return;
         }
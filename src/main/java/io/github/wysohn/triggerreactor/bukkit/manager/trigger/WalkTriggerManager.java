@@ -47,10 +47,7 @@ public class WalkTriggerManager extends LocationBasedTriggerManager<AbstractLoca
 
     private void handleWalk(PlayerBlockLocationEvent e, SimpleLocation to){
         Player player = e.getPlayer();
-        SimpleLocation bottomLoc = to.clone();
-        bottomLoc.add(0, -1, 0);
-
-        WalkTrigger trigger = getTriggerForLocation(bottomLoc);
+        WalkTrigger trigger = getTriggerForLocation(to.getWorld(), to.getX(), to.getY() - 1, to.getZ());
         if(trigger == null)
             return;
 
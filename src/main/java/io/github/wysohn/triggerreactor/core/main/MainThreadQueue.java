@@ -0,0 +1,183 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.main;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tasks waiting to be run in the server thread. Instead of scheduling each task separately, the platform calls
+ * {@link #drain()} once every tick, and the tasks are run until the time budget of the tick is used up. Whatever
+ * is left stays in the queue for the next tick, so TriggerReactor can't take more than the budget from a tick
+ * even when thousands of tasks are submitted at once. At least one task runs every tick.
+ * <p>
+ * The tasks of the sync Triggers go to {@link Lane#TRIGGER} and run before everything in {@link Lane#BACKGROUND}.
+ * <p>
+ * Any thread can submit the tasks, but only the server thread should drain them.
+ * @author wysohn
+ *
+ */
+public class MainThreadQueue {
+    public static final String CONFIG_BUDGET = "Performance.MainThread.BudgetMillis";
+
+    public static final int DEFAULT_BUDGET = 10;
+
+    public enum Lane{
+        /**the sync Triggers, which the players are waiting for**/
+        TRIGGER,
+        /**Executors, Placeholders, and everything else**/
+        BACKGROUND;
+    }
+
+    private final long budgetNanos;
+
+    private final Queue<FutureTask<?>> triggers = new ConcurrentLinkedQueue<>();
+    private final Queue<FutureTask<?>> background = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown = false;
+
+    private final LongAdder submitted = new LongAdder();
+    //only modified by the server thread
+    private volatile long executed = 0L;
+    private volatile long overBudgetTicks = 0L;
+
+    /**
+     *
+     * @param budgetMillis the time in milliseconds the tasks can take every tick.
+     */
+    public MainThreadQueue(long budgetMillis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, budgetMillis));
+    }
+
+    /**
+     * Create the queue with the budget in the config. The default is used if missing.
+     * @param plugin the plugin
+     * @return the queue
+     */
+    public static MainThreadQueue fromConfig(TriggerReactor plugin) {
+        Object value = plugin.getConfig(CONFIG_BUDGET);
+        int budget = value instanceof Number ? ((Number) value).intValue() : DEFAULT_BUDGET;
+        return new MainThreadQueue(budget);
+    }
+
+    /**
+     * Queue the call to run in the server thread.
+     * @param call the task
+     * @param lane which lane to put the task in
+     * @return the future which completes when the task runs in one of the next ticks
+     * @throws RejectedExecutionException if the queue is already shut down
+     */
+    public <T> Future<T> submit(Callable<T> call, Lane lane) {
+        if(shutdown)
+            throw new RejectedExecutionException("The server thread queue is shut down.");
+
+        FutureTask<T> task = new FutureTask<>(call);
+        Queue<FutureTask<?>> queue = lane == Lane.TRIGGER ? triggers : background;
+        queue.offer(task);
+        submitted.increment();
+
+        //shutdown() may have emptied the queues before the task got in, and nothing will drain it after
+        if(shutdown && task.cancel(false)){
+            queue.remove(task);
+            throw new RejectedExecutionException("The server thread queue is shut down.");
+        }
+
+        return task;
+    }
+
+    /**
+     * Run the tasks until the queues are empty or the budget is used up. Call this once every tick
+     * in the server thread.
+     * @return number of tasks run
+     */
+    public int drain() {
+        long start = System.nanoTime();
+
+        int count = 0;
+        FutureTask<?> task;
+        while((task = poll()) != null){
+            task.run();
+            count++;
+
+            if(System.nanoTime() - start >= budgetNanos){
+                if(!isEmpty())
+                    overBudgetTicks++;
+                break;
+            }
+        }
+
+        executed += count;
+        return count;
+    }
+
+    private FutureTask<?> poll() {
+        FutureTask<?> task = triggers.poll();
+        return task != null ? task : background.poll();
+    }
+
+    public boolean isEmpty() {
+        return triggers.isEmpty() && background.isEmpty();
+    }
+
+    /**
+     * @return number of the tasks waiting. Not exact if other threads are submitting at the same time.
+     */
+    public int size() {
+        return triggers.size() + background.size();
+    }
+
+    /**
+     * Stop accepting the tasks and cancel the ones still waiting, so the threads waiting for them are released.
+     */
+    public void shutdown() {
+        shutdown = true;
+
+        FutureTask<?> task;
+        while((task = poll()) != null)
+            task.cancel(false);
+    }
+
+    public long getBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    /**
+     * @return number of the ticks which couldn't run every task within the budget.
+     */
+    public long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+
+    @Override
+    public String toString() {
+        return "MainThreadQueue[budget="+getBudgetMillis()+"ms, waiting="+size()+", submitted="+getSubmittedCount()
+                +", executed="+getExecutedCount()+", overBudgetTicks="+getOverBudgetTicks()+"]";
+    }
+}
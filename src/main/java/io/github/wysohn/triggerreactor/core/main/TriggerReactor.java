@@ -17,16 +17,20 @@
 package io.github.wysohn.triggerreactor.core.main;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 import io.github.wysohn.triggerreactor.core.bridge.ICommandSender;
@@ -61,6 +65,7 @@ import io.github.wysohn.triggerreactor.core.manager.trigger.AbstractTriggerManag
 import io.github.wysohn.triggerreactor.core.manager.trigger.share.api.AbstractAPISupport;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Interpreter;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Interpreter.ProcessInterrupter;
+import io.github.wysohn.triggerreactor.core.script.interpreter.PlaceholderCache;
 import io.github.wysohn.triggerreactor.tools.ScriptEditor.SaveHandler;
 import io.github.wysohn.triggerreactor.tools.TimeUtil;
 
@@ -72,14 +77,42 @@ import io.github.wysohn.triggerreactor.tools.TimeUtil;
  */
 public abstract class TriggerReactor {
     /**
-     * Cached Pool for thread execution. It is used by {@link io.github.wysohn.triggerreactor.core.script.interpreter.Executor#runSyncTask(Runnable)}
+     * Hands the tasks to {@link #getWorkerPool()}. The pool belongs to the plugin, so shutting this down does nothing.
+     * @deprecated use {@link #getWorkerPool()}. This will be removed in the next major version.
      */
-    public static final ExecutorService cachedThreadPool = Executors.newCachedThreadPool(new ThreadFactory(){
+    @Deprecated
+    public static final ExecutorService cachedThreadPool = new AbstractExecutorService(){
         @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(){{this.setPriority(MIN_PRIORITY);}};
+        public void execute(Runnable command) {
+            if(!getInstance().getWorkerPool().execute(command))
+                throw new RejectedExecutionException("The worker queue is full.");
+        }
+
+        @Override
+        public void shutdown() {
+
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
         }
-    });
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return false;
+        }
+    };
 
     private static TriggerReactor instance;
 
@@ -127,6 +160,91 @@ public abstract class TriggerReactor {
 
     public abstract AbstractNamedTriggerManager getNamedTriggerManager();
 
+    //read on every activation, so only the creation and the shutdown take the lock
+    private volatile TriggerWorkerPool workerPool;
+    private boolean workerPoolShutdown = false;
+
+    /**
+     * Get the threads which run the async Triggers and the delayed tasks. The pool is created with the values
+     * in the config when it's first used.
+     * @return the pool. After {@link #shutdownWorkerPool()}, the pool which was shut down, so it rejects every task.
+     */
+    public TriggerWorkerPool getWorkerPool() {
+        TriggerWorkerPool pool = workerPool;
+        if(pool != null)
+            return pool;
+
+        synchronized(this){
+            if(workerPool == null){
+                pool = TriggerWorkerPool.fromConfig(this);
+                if(workerPoolShutdown)
+                    pool.shutdown();
+                workerPool = pool;
+            }
+            return workerPool;
+        }
+    }
+
+    /**
+     * Stop the worker threads. Tasks already in the queue will still run, but no more task is accepted.
+     */
+    protected synchronized void shutdownWorkerPool() {
+        workerPoolShutdown = true;
+        if(workerPool != null)
+            workerPool.shutdown();
+    }
+
+    private volatile MainThreadQueue mainThreadQueue;
+    private boolean mainThreadQueueShutdown = false;
+
+    /**
+     * Get the queue of the tasks waiting for the server thread. The queue is created with the budget
+     * in the config when it's first used.
+     * @return the queue. After {@link #shutdownMainThreadQueue()}, the queue which was shut down, so it
+     *  rejects every task instead of keeping them where nothing drains.
+     */
+    public MainThreadQueue getMainThreadQueue() {
+        MainThreadQueue queue = mainThreadQueue;
+        if(queue != null)
+            return queue;
+
+        synchronized(this){
+            if(mainThreadQueue == null){
+                queue = MainThreadQueue.fromConfig(this);
+                if(mainThreadQueueShutdown)
+                    queue.shutdown();
+                mainThreadQueue = queue;
+            }
+            return mainThreadQueue;
+        }
+    }
+
+    /**
+     * Cancel the tasks still waiting for the server thread, and reject the ones submitted after.
+     */
+    protected synchronized void shutdownMainThreadQueue() {
+        mainThreadQueueShutdown = true;
+        if(mainThreadQueue != null)
+            mainThreadQueue.shutdown();
+    }
+
+    private final PlaceholderCache placeholderCache = new PlaceholderCache(PlaceholderCache.DEFAULT_MAX_SIZE,
+            new Function<Object, Object>(){
+        @Override
+        public Object apply(Object context) {
+            return extractUUIDFromContext(context);
+        }
+    });
+
+    /**
+     * Get the cache shared by the Triggers for the Placeholders with the TTL policy. The values are
+     * kept separately for each player found by {@link #extractUUIDFromContext(Object)}.
+     * @return the cache
+     */
+    public PlaceholderCache getPlaceholderCache() {
+        return placeholderCache;
+    }
+
     private static final String INTEGER_REGEX = "^[0-9]+$";
     private static final String DOUBLE_REGEX = "^[0-9]+.[0-9]{0,}$";
 
@@ -141,6 +259,9 @@ public abstract class TriggerReactor {
                     debugging = !debugging;
 
                     getLogger().info("Debugging is set to "+debugging);
+                    getLogger().info("Workers: "+getWorkerPool());
+                    getLogger().info(getMainThreadQueue().toString());
+                    getLogger().info(getPlaceholderCache().toString());
                     return true;
                 }else if(args[0].equalsIgnoreCase("click") || args[0].equalsIgnoreCase("c")){
                     if(args.length == 1){
@@ -1265,6 +1386,17 @@ public abstract class TriggerReactor {
      */
     public abstract <T> Future<T> callSyncMethod(Callable<T> call);
 
+    /**
+     * Run Callable on the server thread. Platforms using {@link MainThreadQueue} put the call in the given lane;
+     * the others simply call {@link #callSyncMethod(Callable)}.
+     * @param call the callable
+     * @param lane {@link MainThreadQueue.Lane#TRIGGER} for the sync Triggers.
+     * @return the future object.
+     */
+    public <T> Future<T> callSyncMethod(Callable<T> call, MainThreadQueue.Lane lane) {
+        return callSyncMethod(call);
+    }
+
     /**
      * Call event so that it can be heard by listeners
      * @param event
@@ -0,0 +1,396 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.main;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Threads for the async Triggers and the delayed tasks. The number of threads and the number of waiting tasks
+ * are limited, so a Trigger on a frequent event can't make the server create thousands of threads.
+ * <p>
+ * When the queue is full, the task is either dropped or run by the calling thread depending on the
+ * {@link RejectionPolicy}. Each Trigger can also have a limit on how many of its activations can be
+ * running or waiting at the same time. The scripts resumed after #WAIT were accepted already, so they have
+ * their own threads and queue without the limit; see {@link #resume(Runnable)}.
+ * <p>
+ * If the virtual threads are enabled and the JVM supports them, each task gets its own virtual thread instead,
+ * so the blocking calls in the scripts don't hold the worker threads. The thread and queue limits are not used
+ * in that case, but the limit per Trigger still is.
+ * @author wysohn
+ *
+ */
+public class TriggerWorkerPool {
+    public static final String CONFIG_THREADS = "Performance.Workers.Threads";
+    public static final String CONFIG_QUEUE_SIZE = "Performance.Workers.QueueSize";
+    public static final String CONFIG_MAX_PER_TRIGGER = "Performance.Workers.MaxPerTrigger";
+    public static final String CONFIG_REJECTION_POLICY = "Performance.Workers.RejectionPolicy";
+    public static final String CONFIG_VIRTUAL_THREADS = "Performance.Workers.VirtualThreads";
+
+    public static final int DEFAULT_THREADS = 32;
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+    public static final int DEFAULT_MAX_PER_TRIGGER = 64;
+
+    //don't flood the console when the server is overloaded
+    private static final long WARNING_INTERVAL = 10000L;
+
+    public enum RejectionPolicy{
+        /**drop the task and count it**/
+        DISCARD,
+        /**run the task in the thread which submitted it. Dropped instead if it's the server thread**/
+        CALLER_RUNS;
+    }
+
+    private final Logger logger;
+    private final int maxPerTrigger;
+    private final RejectionPolicy policy;
+
+    private final ThreadPoolExecutor workers;
+    //for the scripts resumed after #WAIT. The queue has no limit, so they are never dropped
+    private final ThreadPoolExecutor resumeWorkers;
+    //null if the virtual threads are not used
+    private final ExecutorService virtualWorkers;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final AtomicLong lastWarning = new AtomicLong();
+
+    /**
+     *
+     * @param logger logger to report the dropped tasks
+     * @param threads maximum number of threads running the Triggers
+     * @param queueSize maximum number of tasks waiting for a thread
+     * @param maxPerTrigger maximum number of activations of one Trigger running or waiting at the same time. 0 for no limit.
+     * @param policy what to do with the task when the queue is full
+     */
+    public TriggerWorkerPool(Logger logger, int threads, int queueSize, int maxPerTrigger, RejectionPolicy policy) {
+        this(logger, threads, queueSize, maxPerTrigger, policy, false);
+    }
+
+    /**
+     *
+     * @param logger logger to report the dropped tasks
+     * @param threads maximum number of threads running the Triggers
+     * @param queueSize maximum number of tasks waiting for a thread
+     * @param maxPerTrigger maximum number of activations of one Trigger running or waiting at the same time. 0 for no limit.
+     * @param policy what to do with the task when the queue is full
+     * @param virtualThreads true to run the tasks in virtual threads if the JVM supports them.
+     */
+    public TriggerWorkerPool(Logger logger, int threads, int queueSize, int maxPerTrigger, RejectionPolicy policy,
+            boolean virtualThreads) {
+        this.logger = logger;
+        this.maxPerTrigger = maxPerTrigger;
+        this.policy = policy;
+
+        threads = Math.max(1, threads);
+        this.workers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                new WorkerThreadFactory("TriggerReactor Worker"),
+                new RejectionHandler());
+        this.workers.allowCoreThreadTimeOut(true);
+
+        this.resumeWorkers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new WorkerThreadFactory("TriggerReactor Resume Worker"));
+        this.resumeWorkers.allowCoreThreadTimeOut(true);
+
+        ExecutorService virtualWorkers = null;
+        if(virtualThreads){
+            virtualWorkers = VirtualThreads.newExecutor();
+            if(virtualWorkers == null && logger != null)
+                logger.warning("Virtual threads are not supported by this JVM. Using the worker threads instead.");
+        }
+        this.virtualWorkers = virtualWorkers;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new WorkerThreadFactory("TriggerReactor Scheduler"));
+    }
+
+    /**
+     * Create the pool with the values in the config. Missing values are replaced with the defaults.
+     * @param plugin the plugin
+     * @return the pool
+     */
+    public static TriggerWorkerPool fromConfig(TriggerReactor plugin) {
+        int threads = getInt(plugin, CONFIG_THREADS, DEFAULT_THREADS);
+        int queueSize = getInt(plugin, CONFIG_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        int maxPerTrigger = getInt(plugin, CONFIG_MAX_PER_TRIGGER, DEFAULT_MAX_PER_TRIGGER);
+
+        RejectionPolicy policy = RejectionPolicy.DISCARD;
+        Object value = plugin.getConfig(CONFIG_REJECTION_POLICY);
+        if(value != null){
+            try{
+                policy = RejectionPolicy.valueOf(value.toString().toUpperCase());
+            }catch(IllegalArgumentException e){
+                plugin.getLogger().warning(value+" is not a valid "+CONFIG_REJECTION_POLICY+". Using "+policy+" instead.");
+            }
+        }
+
+        boolean virtualThreads = Boolean.TRUE.equals(plugin.getConfig(CONFIG_VIRTUAL_THREADS));
+
+        return new TriggerWorkerPool(plugin.getLogger(), threads, queueSize, maxPerTrigger, policy, virtualThreads);
+    }
+
+    private static int getInt(TriggerReactor plugin, String key, int def) {
+        Object value = plugin.getConfig(key);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    /**
+     * Run the task in one of the worker threads.
+     * @param task the task
+     * @return true if the task is accepted; false if it's dropped.
+     */
+    public boolean execute(Runnable task) {
+        submitted.increment();
+        return submit(new CountingTask(task, null));
+    }
+
+    /**
+     * Run the task in one of the worker threads, but only if the owner of the task doesn't have too many
+     * tasks running or waiting already.
+     * @param task the task
+     * @param running the counter of the owner, usually a Trigger. Share the same counter for the same owner.
+     * @return true if the task is accepted; false if it's dropped.
+     */
+    public boolean execute(Runnable task, AtomicInteger running) {
+        submitted.increment();
+        if(running.incrementAndGet() > maxPerTrigger && maxPerTrigger > 0){
+            running.decrementAndGet();
+            throttled.increment();
+            warn("Too many activations of the same Trigger are running. Increase "+CONFIG_MAX_PER_TRIGGER+" if it's intended.");
+            return false;
+        }
+
+        return submit(new CountingTask(task, running));
+    }
+
+    private boolean submit(CountingTask task) {
+        if(virtualWorkers != null){
+            try{
+                virtualWorkers.execute(task);
+                return true;
+            }catch(RejectedExecutionException e){
+                rejected.increment();
+                task.finish();
+                return false;
+            }
+        }
+
+        workers.execute(task);
+
+        //the handler marks the rejected ones
+        if(task.rejected){
+            task.finish();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run the task in a worker thread without going through the limited queue. Use it to continue the work
+     * which was accepted already, like a script resumed after #WAIT, so it's neither dropped in the middle
+     * nor run in the calling thread. The number of such tasks is limited by the number of the accepted ones.
+     * @param task the task
+     * @return true if the task is accepted; false only if the pool is shut down.
+     */
+    public boolean resume(Runnable task) {
+        submitted.increment();
+        CountingTask counting = new CountingTask(task, null);
+        try{
+            if(virtualWorkers != null)
+                virtualWorkers.execute(counting);
+            else
+                resumeWorkers.execute(counting);
+            return true;
+        }catch(RejectedExecutionException e){
+            rejected.increment();
+            return false;
+        }
+    }
+
+    /**
+     * Run the task after the delay. The task runs in the scheduler thread, which is shared by all the delayed
+     * tasks, so it should only hand the actual work to {@link #execute(Runnable)} or {@link #resume(Runnable)}.
+     * @param task the task
+     * @param mills delay in milliseconds
+     * @return the future of the task
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long mills) {
+        return scheduler.schedule(task, Math.max(0L, mills), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start a thread which lives long, like the one of a Repeating Trigger. It's a virtual thread
+     * if they are enabled; otherwise, a normal thread with low priority.
+     * @param task the task
+     * @param name name of the thread
+     * @return the started thread
+     */
+    public Thread startThread(Runnable task, String name) {
+        Thread thread;
+        if(virtualWorkers != null){
+            thread = VirtualThreads.factory().newThread(task);
+            thread.setName(name);
+        }else{
+            thread = new Thread(task);
+            thread.setName(name);
+            thread.setPriority(Thread.MIN_PRIORITY + 1);
+        }
+
+        thread.start();
+        return thread;
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+        workers.shutdown();
+        resumeWorkers.shutdown();
+        if(virtualWorkers != null)
+            virtualWorkers.shutdown();
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualWorkers != null;
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getPoolSize() {
+        return workers.getPoolSize() + resumeWorkers.getPoolSize();
+    }
+
+    public int getQueueSize() {
+        return workers.getQueue().size() + resumeWorkers.getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "threads: "+getActiveCount()+"/"+(isVirtualThreads() ? "virtual" : workers.getMaximumPoolSize())
+                +", queued: "+getQueueSize()
+                +", submitted: "+getSubmittedCount()
+                +", completed: "+getCompletedCount()
+                +", rejected: "+getRejectedCount()
+                +", throttled: "+getThrottledCount();
+    }
+
+    private void warn(String message) {
+        long now = System.currentTimeMillis();
+        long last = lastWarning.get();
+        if(now - last > WARNING_INTERVAL && lastWarning.compareAndSet(last, now) && logger != null)
+            logger.warning(message+" ["+this+"]");
+    }
+
+    private class CountingTask implements Runnable{
+        private final Runnable task;
+        private final AtomicInteger running;
+        private boolean rejected = false;
+
+        private CountingTask(Runnable task, AtomicInteger running) {
+            this.task = task;
+            this.running = running;
+        }
+
+        @Override
+        public void run() {
+            active.incrementAndGet();
+            try{
+                task.run();
+            }finally{
+                active.decrementAndGet();
+                completed.increment();
+                finish();
+            }
+        }
+
+        private void finish() {
+            if(running != null)
+                running.decrementAndGet();
+        }
+    }
+
+    private class RejectionHandler implements RejectedExecutionHandler{
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            //an async Trigger must not take the server thread even if the queue is full
+            if(policy == RejectionPolicy.CALLER_RUNS && !executor.isShutdown() && !isServerThread()){
+                r.run();
+                return;
+            }
+
+            rejected.increment();
+            ((CountingTask) r).rejected = true;
+            warn("Trigger execution queue is full. The task is dropped.");
+        }
+    }
+
+    protected boolean isServerThread() {
+        TriggerReactor plugin = TriggerReactor.getInstance();
+        return plugin != null && plugin.isServerThread();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory{
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private WorkerThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name+" #"+count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.main;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21+ through reflection, so the plugin can still be built for and
+ * run on Java 8.
+ * @author wysohn
+ *
+ */
+final class VirtualThreads {
+    private static final ThreadFactory FACTORY = createFactory("TriggerReactor Virtual #");
+
+    private VirtualThreads() {
+
+    }
+
+    /**
+     * @return true if the JVM can create virtual threads.
+     */
+    static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return factory of the virtual threads; null if not supported.
+     */
+    static ThreadFactory factory() {
+        return FACTORY;
+    }
+
+    /**
+     * @return the executor which starts a new virtual thread for each task; null if not supported.
+     */
+    static ExecutorService newExecutor() {
+        if(FACTORY == null)
+            return null;
+
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, FACTORY);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    //Thread.ofVirtual().name(prefix, 1).factory()
+    private static ThreadFactory createFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -18,36 +18,53 @@ package io.github.wysohn.triggerreactor.core.manager;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
-import javax.script.Bindings;
-import javax.script.Compilable;
-import javax.script.CompiledScript;
-import javax.script.Invocable;
-import javax.script.ScriptContext;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Executor;
-import io.github.wysohn.triggerreactor.tools.ReflectionUtil;
+import io.github.wysohn.triggerreactor.core.script.interpreter.ThreadAffinity;
+import io.github.wysohn.triggerreactor.tools.VariableExtractor;
 
 @SuppressWarnings("serial")
 public abstract class AbstractExecutorManager extends AbstractJavascriptBasedManager implements KeyValueManager<Executor> {
-    protected Map<String, Executor> jsExecutors = new HashMap<>();
+    //Executors compiled from the .js files. Replaced as a whole on reload
+    private Map<String, Executor> jsExecutors = new HashMap<>();
+    //Executors implemented in Java. They stay registered across the reloads
+    protected final Map<String, Executor> nativeExecutors = new ConcurrentHashMap<>();
+    private boolean loaded = false;
+
+    //the table the interpreters read. It's never modified once published; a new one is published instead
+    private volatile Map<String, Executor> executors = Collections.emptyMap();
+    private final Map<String, Executor> backedMap = new AbstractMap<String, Executor>(){
+        @Override
+        public Executor get(Object key) {
+            return executors.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return executors.containsKey(key);
+        }
+
+        @Override
+        public Set<Entry<String, Executor>> entrySet() {
+            return executors.entrySet();
+        }
+    };
 
     public AbstractExecutorManager(TriggerReactor plugin) throws ScriptException {
         super(plugin);
@@ -57,20 +74,54 @@ public abstract class AbstractExecutorManager extends AbstractJavascriptBasedMan
      * Loads all the Executor files and files under the folders. If Executors are inside the folder, the folder
      * name will be added infront of them. For example, an Executor named test is under folder named hi, then
      * its name will be hi:test; therefore, you should #hi:test to call this executor.
-     * @param file the target file/folder
+     * <p>
+     * The files are compiled in parallel, and the Executors already loaded are replaced only if every file is
+     * compiled without error, so one broken file doesn't take away the Executors which were working. On the
+     * first load, the ones compiled without error are loaded anyway.
+     * @param folder the folder which contains the Executors
      * @param filter the filter for Executors. Usually you check if the file ends withd .js or is a folder.
-     * @throws ScriptException
+     * @return true if every file is loaded; false if some of them failed.
      * @throws IOException
      */
-    protected void reloadExecutors(File file, FileFilter filter) throws ScriptException, IOException{
-        reloadExecutors(new Stack<String>(), file, filter);
+    protected boolean reloadExecutors(File folder, FileFilter filter) throws IOException{
+        Map<String, File> files = new LinkedHashMap<>();
+        for(File file : folder.listFiles(filter)){
+            findExecutors(new Stack<String>(), file, filter, files);
+        }
+
+        Map<String, Callable<Executor>> tasks = new LinkedHashMap<>();
+        for(Entry<String, File> entry : files.entrySet()){
+            final File file = entry.getValue();
+            final String fileName = file.getName().substring(0, file.getName().indexOf("."));
+            tasks.put(entry.getKey(), new Callable<Executor>(){
+                @Override
+                public Executor call() throws Exception {
+                    return new JSExecutor(fileName, IScriptEngineInitializer.getNashornEngine(sem), file);
+                }
+            });
+        }
+
+        Map<String, Executor> compiled = compileAll(tasks, "executor");
+        boolean complete = compiled.size() == tasks.size();
+        if(!complete && loaded){
+            plugin.getLogger().warning("Some executors could not be loaded. Keeping the executors loaded before.");
+            return false;
+        }
+
+        synchronized(this){
+            jsExecutors = compiled;
+            publish();
+            loaded = true;
+        }
+
+        return complete;
     }
 
-    private void reloadExecutors(Stack<String> name, File file, FileFilter filter) throws ScriptException, IOException{
+    private void findExecutors(Stack<String> name, File file, FileFilter filter, Map<String, File> files) throws IOException{
         if(file.isDirectory()){
             name.push(file.getName());
             for(File f : file.listFiles(filter)){
-                reloadExecutors(name, f, filter);
+                findExecutors(name, f, filter, files);
             }
             name.pop();
         }else{
@@ -82,21 +133,44 @@ public abstract class AbstractExecutorManager extends AbstractJavascriptBasedMan
             fileName = fileName.substring(0, fileName.indexOf("."));
             builder.append(fileName);
 
-            if(jsExecutors.containsKey(builder.toString())){
+            if(files.containsKey(builder.toString())){
                 plugin.getLogger().warning(builder.toString()+" already registered! Duplicating executors?");
+            }else if(nativeExecutors.containsKey(builder.toString()) && isNativeStub(file)){
+                //the Java implementation will be used
             }else{
-                JSExecutor exec = new JSExecutor(fileName, IScriptEngineInitializer.getNashornEngine(sem), file);
-                jsExecutors.put(builder.toString(), exec);
+                files.put(builder.toString(), file);
             }
         }
     }
 
+    /**
+     * Register an Executor implemented in Java. It is used instead of the .js file of the same name
+     * if the file has the '// @native' line, so the users can still replace it by removing the line or
+     * by writing their own .js file.
+     * @param name name of the Executor
+     * @param executor the Executor
+     */
+    public synchronized void registerNative(String name, Executor executor) {
+        nativeExecutors.put(name, executor);
+        publish();
+    }
+
+    /**
+     * Build the new table from the .js files and the Executors implemented in Java, and replace the
+     * table the interpreters read with it. The ones replaced by the .js files are not put.
+     */
+    private synchronized void publish() {
+        Map<String, Executor> table = new HashMap<>(nativeExecutors);
+        table.putAll(jsExecutors);
+        executors = Collections.unmodifiableMap(table);
+    }
+
     /* (non-Javadoc)
      * @see io.github.wysohn.triggerreactor.core.manager.KeyValueManager#get(java.lang.Object)
      */
     @Override
     public Executor get(Object key) {
-        return jsExecutors.get(key);
+        return executors.get(key);
     }
 
     /* (non-Javadoc)
@@ -104,7 +178,7 @@ public abstract class AbstractExecutorManager extends AbstractJavascriptBasedMan
      */
     @Override
     public boolean containsKey(Object key) {
-        return jsExecutors.containsKey(key);
+        return executors.containsKey(key);
     }
 
     /* (non-Javadoc)
@@ -113,109 +187,113 @@ public abstract class AbstractExecutorManager extends AbstractJavascriptBasedMan
     @Override
     public Set<Entry<String, Executor>> entrySet() {
         Set<Entry<String, Executor>> set = new HashSet<>();
-        for(Entry<String, Executor> entry : jsExecutors.entrySet()){
+        for(Entry<String, Executor> entry : executors.entrySet()){
             set.add(new AbstractMap.SimpleEntry<String, Executor>(entry.getKey(), entry.getValue()));
         }
         return set;
     }
 
-    /* (non-Javadoc)
-     * @see io.github.wysohn.triggerreactor.core.manager.KeyValueManager#getExecutorMap()
+    /**
+     * The returned map always reads the latest table, so the interpreters holding it see the reloaded
+     * Executors all at once. It can't be modified.
      */
     @Override
     public Map<String, Executor> getBackedMap() {
-        return this.jsExecutors;
+        return backedMap;
     }
 
     public static class JSExecutor extends Executor{
         private final String executorName;
         private final String sourceCode;
 
-        private ScriptEngine engine = null;
-        private CompiledScript compiled = null;
+        private final JSFunction function;
+        private final ThreadAffinity affinity;
 
         public JSExecutor(String executorName, ScriptEngine engine, File file) throws ScriptException, IOException {
             this.executorName = executorName;
-            this.engine = engine;
 
-            StringBuilder builder = new StringBuilder();
-            FileReader reader = new FileReader(file);
-            int read = -1;
-            while((read = reader.read()) != -1)
-                builder.append((char) read);
-            reader.close();
-            sourceCode = builder.toString();
+            sourceCode = readSource(file);
 
-            Compilable compiler = (Compilable) engine;
-            compiled = compiler.compile(sourceCode);
+            function = new JSFunction(executorName, engine, sourceCode);
+            affinity = ThreadAffinity.fromSource(sourceCode);
+        }
+
+        @Override
+        public ThreadAffinity getThreadAffinity() {
+            return affinity;
         }
 
         @Override
         public Integer execute(boolean sync, Object e, Object... args) throws Exception {
             ///////////////////////////////
             Map<String, Object> variables = new HashMap<>();
-            Map<String, Object> vars = ReflectionUtil.extractVariables(e);
-            variables.putAll(vars);
+            VariableExtractor.of(e.getClass()).extract(e, variables);
 
             instance.extractCustomVariables(variables, e);
             ///////////////////////////////
 
-            ScriptContext scriptContext = engine.getContext();
-            final Bindings bindings = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
-            for(Map.Entry<String, Object> entry : variables.entrySet()){
-                String key = entry.getKey();
-                Object value = entry.getValue();
-                bindings.put(key, value);
-            }
-
-            try {
-                compiled.eval(scriptContext);
-            } catch (ScriptException e2) {
-                e2.printStackTrace();
-            }
-
-            Invocable invocable = (Invocable) compiled.getEngine();
             Callable<Integer> call = new Callable<Integer>(){
                 @Override
                 public Integer call() throws Exception {
-                    Object argObj = args;
-
                     if(TriggerReactor.getInstance().isDebugging()){
                         Integer result = null;
                         long start = System.currentTimeMillis();
-                        result = (Integer) invocable.invokeFunction(executorName, argObj);
+                        result = (Integer) function.invoke(variables, args);
                         long end = System.currentTimeMillis();
                         TriggerReactor.getInstance().getLogger().info(executorName+" execution -- "+(end - start)+"ms");
                         return result;
                     }else{
-                        return (Integer) invocable.invokeFunction(executorName, argObj);
+                        return (Integer) function.invoke(variables, args);
                     }
                 }
             };
 
-            if(TriggerReactor.getInstance().isServerThread()){
-                Integer result = null;
-                try {
-                    result = call.call();
-                } catch (Exception e1) {
-                    e1.printStackTrace();
-                    throw new Exception("#"+executorName+" encountered error.", e1);
-                }
-                return result;
-            }else{
-                Future<Integer> future = runSyncTaskForFuture(call);
-
-                Integer result = null;
-                try {
-                    result = future.get(5, TimeUnit.SECONDS);
-                } catch (InterruptedException | ExecutionException e1) {
-                    throw new Exception("#"+executorName+" encountered error.", e1);
-                } catch (TimeoutException e1) {
-                    throw new Exception("#"+executorName+" was stopped. It took longer than 5 seconds to process. Is the server lagging?", e1);
+            return callWithAffinity(call, "#"+executorName);
+        }
+    }
+
+    /**
+     * Executor implemented in Java, which doesn't go through the script engine at all. Register it
+     * with {@link AbstractExecutorManager#registerNative(String, Executor)}.
+     */
+    public static abstract class NativeExecutor extends Executor{
+        private final String executorName;
+        private final ThreadAffinity affinity;
+
+        public NativeExecutor(String executorName, ThreadAffinity affinity) {
+            this.executorName = executorName;
+            this.affinity = affinity;
+        }
+
+        public String getExecutorName() {
+            return executorName;
+        }
+
+        @Override
+        public ThreadAffinity getThreadAffinity() {
+            return affinity;
+        }
+
+        @Override
+        public Integer execute(boolean sync, Object e, Object... args) throws Exception {
+            Callable<Integer> call = new Callable<Integer>(){
+                @Override
+                public Integer call() throws Exception {
+                    return run(e, args);
                 }
-                return result;
-            }
+            };
+
+            return callWithAffinity(call, "#"+executorName);
         }
+
+        /**
+         * Do the work. Runs in the thread {@link #getThreadAffinity()} allows.
+         * @param e the context
+         * @param args the arguments
+         * @return same as {@link Executor#execute(boolean, Object, Object...)}
+         * @throws Exception
+         */
+        protected abstract Integer run(Object e, Object[] args) throws Exception;
     }
 
 }
\ No newline at end of file
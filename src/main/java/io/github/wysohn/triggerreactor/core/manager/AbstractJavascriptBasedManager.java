@@ -16,9 +16,24 @@
  *******************************************************************************/
 package io.github.wysohn.triggerreactor.core.manager;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -31,6 +46,85 @@ public abstract class AbstractJavascriptBasedManager extends Manager implements
     protected static final ScriptEngineManager sem = new ScriptEngineManager(null);
     public static AbstractJavascriptBasedManager instance;
 
+    private static final Pattern NATIVE_HEADER = Pattern.compile("^\\s*//\\s*@native\\b",
+            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Check if the .js file is only a copy of the built-in which is implemented in Java. Such files have
+     * the comment line
+     * <pre>
+     * // @native
+     * </pre>
+     * and the Java implementation is used instead. Remove the line to use the .js file.
+     * @param file the .js file
+     * @return true if the file has the line
+     * @throws IOException
+     */
+    protected static boolean isNativeStub(File file) throws IOException {
+        return NATIVE_HEADER.matcher(readSource(file)).find();
+    }
+
+    /**
+     * Read the whole file with the default charset.
+     * @param file the file
+     * @return the content of the file
+     * @throws IOException
+     */
+    protected static String readSource(File file) throws IOException {
+        StringBuilder builder = new StringBuilder((int) file.length());
+        try(Reader reader = new BufferedReader(new FileReader(file))){
+            char[] buffer = new char[4096];
+            int read = -1;
+            while((read = reader.read(buffer)) != -1)
+                builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Compile the scripts in parallel and wait until all of them are done. The threads are only used for this
+     * call and stopped right after. The scripts which failed to compile are logged and left out of the result.
+     * @param tasks the compile tasks by the name of the script
+     * @param type what is being compiled. Used in the log. Ex) executor
+     * @return the compiled scripts by the name, in the same order as the tasks.
+     */
+    protected <T> Map<String, T> compileAll(Map<String, Callable<T>> tasks, String type) {
+        int threads = Math.max(1, Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TriggerReactor Script Compiler "+count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        Map<String, T> compiled = new LinkedHashMap<>();
+        try{
+            Map<String, Future<T>> futures = new LinkedHashMap<>();
+            for(Entry<String, Callable<T>> entry : tasks.entrySet())
+                futures.put(entry.getKey(), pool.submit(entry.getValue()));
+
+            for(Entry<String, Future<T>> entry : futures.entrySet()){
+                try {
+                    compiled.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    plugin.getLogger().warning("Could not load "+type+" "+entry.getKey());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            plugin.getLogger().warning("Interrupted while loading "+type+"s.");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return compiled;
+    }
+
     @Override
     public void initScriptEngine(ScriptEngineManager sem) throws ScriptException{
         IScriptEngineInitializer.super.initScriptEngine(sem);
@@ -18,162 +18,256 @@ package io.github.wysohn.triggerreactor.core.manager;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-
-import javax.script.Bindings;
-import javax.script.Compilable;
-import javax.script.CompiledScript;
-import javax.script.Invocable;
-import javax.script.ScriptContext;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
+import io.github.wysohn.triggerreactor.core.script.interpreter.CachePolicy;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Placeholder;
-import io.github.wysohn.triggerreactor.tools.ReflectionUtil;
+import io.github.wysohn.triggerreactor.core.script.interpreter.PlaceholderCache;
+import io.github.wysohn.triggerreactor.core.script.interpreter.ThreadAffinity;
+import io.github.wysohn.triggerreactor.tools.VariableExtractor;
 
 public abstract class AbstractPlaceholderManager extends AbstractJavascriptBasedManager implements KeyValueManager<Placeholder>  {
-    protected Map<String, Placeholder> jsPlaceholders = new HashMap<>();
+    //Placeholders compiled from the .js files. Replaced as a whole on reload
+    private Map<String, Placeholder> jsPlaceholders = new HashMap<>();
+    //Placeholders implemented in Java. They stay registered across the reloads
+    protected final Map<String, Placeholder> nativePlaceholders = new ConcurrentHashMap<>();
+    private boolean loaded = false;
+
+    //the table the interpreters read. It's never modified once published; a new one is published instead
+    private volatile Map<String, Placeholder> placeholders = Collections.emptyMap();
+    private final Map<String, Placeholder> backedMap = new AbstractMap<String, Placeholder>(){
+        @Override
+        public Placeholder get(Object key) {
+            return placeholders.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return placeholders.containsKey(key);
+        }
+
+        @Override
+        public Set<Entry<String, Placeholder>> entrySet() {
+            return placeholders.entrySet();
+        }
+    };
 
     public AbstractPlaceholderManager(TriggerReactor plugin) throws ScriptException {
         super(plugin);
     }
 
-    protected void reloadPlaceholders(File file, FileFilter filter) throws ScriptException, IOException{
-        String fileName = file.getName();
-        fileName = fileName.substring(0, fileName.indexOf("."));
+    /**
+     * Loads all the Placeholder files in the folder. The files are compiled in parallel, and the Placeholders
+     * already loaded are replaced only if every file is compiled without error. On the first load, the ones
+     * compiled without error are loaded anyway.
+     * @param folder the folder which contains the Placeholders
+     * @param filter the filter for Placeholders. Usually you check if the file ends with .js
+     * @return true if every file is loaded; false if some of them failed.
+     * @throws IOException
+     */
+    protected boolean reloadPlaceholders(File folder, FileFilter filter) throws IOException{
+        Map<String, Callable<Placeholder>> tasks = new LinkedHashMap<>();
+        for(File file : folder.listFiles(filter)){
+            String fileName = file.getName();
+            final String placeholderName = fileName.substring(0, fileName.indexOf("."));
+
+            if(tasks.containsKey(placeholderName)){
+                plugin.getLogger().warning(placeholderName+" already registered! Duplicating placerholders?");
+            }else if(nativePlaceholders.containsKey(placeholderName) && isNativeStub(file)){
+                //the Java implementation will be used
+            }else{
+                tasks.put(placeholderName, new Callable<Placeholder>(){
+                    @Override
+                    public Placeholder call() throws Exception {
+                        return new JSPlaceholder(placeholderName, IScriptEngineInitializer.getNashornEngine(sem), file);
+                    }
+                });
+            }
+        }
 
-        if(jsPlaceholders.containsKey(fileName)){
-            plugin.getLogger().warning(fileName+" already registered! Duplicating placerholders?");
-        }else{
-            JSPlaceholder placeholder = new JSPlaceholder(fileName, IScriptEngineInitializer.getNashornEngine(sem), file);
-            jsPlaceholders.put(fileName, placeholder);
+        Map<String, Placeholder> compiled = compileAll(tasks, "placeholder");
+        boolean complete = compiled.size() == tasks.size();
+        if(!complete && loaded){
+            plugin.getLogger().warning("Some placeholders could not be loaded. Keeping the placeholders loaded before.");
+            return false;
         }
+
+        synchronized(this){
+            jsPlaceholders = compiled;
+            publish();
+            loaded = true;
+        }
+
+        return complete;
+    }
+
+    /**
+     * Register a Placeholder implemented in Java. It is used instead of the .js file of the same name
+     * if the file has the '// @native' line, so the users can still replace it by removing the line or
+     * by writing their own .js file.
+     * @param name name of the Placeholder
+     * @param placeholder the Placeholder
+     */
+    public synchronized void registerNative(String name, Placeholder placeholder) {
+        nativePlaceholders.put(name, placeholder);
+        publish();
     }
+
+    /**
+     * Build the new table from the .js files and the Placeholders implemented in Java, and replace the
+     * table the interpreters read with it. The ones replaced by the .js files are not put. The values
+     * cached from the old Placeholders are dropped, so the next lookup runs the new ones.
+     */
+    private synchronized void publish() {
+        Map<String, Placeholder> table = new HashMap<>(nativePlaceholders);
+        table.putAll(jsPlaceholders);
+        placeholders = Collections.unmodifiableMap(table);
+
+        PlaceholderCache cache = plugin.getPlaceholderCache();
+        if(cache != null)
+            cache.clear();
+    }
+
     @Override
     public Placeholder get(Object key) {
-        return jsPlaceholders.get(key);
+        return placeholders.get(key);
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return jsPlaceholders.containsKey(key);
+        return placeholders.containsKey(key);
     }
 
     @Override
     public Set<Entry<String, Placeholder>> entrySet() {
         Set<Entry<String, Placeholder>> set = new HashSet<>();
-        for(Entry<String, Placeholder> entry : jsPlaceholders.entrySet()){
+        for(Entry<String, Placeholder> entry : placeholders.entrySet()){
             set.add(new AbstractMap.SimpleEntry<String, Placeholder>(entry.getKey(), entry.getValue()));
         }
         return set;
     }
 
+    /**
+     * The returned map always reads the latest table, so the interpreters holding it see the reloaded
+     * Placeholders all at once. It can't be modified.
+     */
     @Override
     public Map<String, Placeholder> getBackedMap() {
-        return jsPlaceholders;
+        return backedMap;
     }
 
     public static class JSPlaceholder extends Placeholder{
         private final String placeholderName;
         private final String sourceCode;
 
-        private ScriptEngine engine = null;
-        private CompiledScript compiled = null;
+        private final JSFunction function;
+        private final ThreadAffinity affinity;
+        private final CachePolicy cachePolicy;
 
         public JSPlaceholder(String placeholderName, ScriptEngine engine, File file) throws ScriptException, IOException {
             this.placeholderName = placeholderName;
-            this.engine = engine;
-
-            StringBuilder builder = new StringBuilder();
-            FileReader reader = new FileReader(file);
-            int read = -1;
-            while((read = reader.read()) != -1)
-                builder.append((char) read);
-            reader.close();
-            sourceCode = builder.toString();
-
-            Compilable compiler = (Compilable) engine;
-            compiled = compiler.compile(sourceCode);
+
+            sourceCode = readSource(file);
+
+            function = new JSFunction(placeholderName, engine, sourceCode);
+            affinity = ThreadAffinity.fromSource(sourceCode);
+            cachePolicy = CachePolicy.fromSource(sourceCode);
+        }
+
+        @Override
+        public ThreadAffinity getThreadAffinity() {
+            return affinity;
+        }
+
+        @Override
+        public CachePolicy getCachePolicy() {
+            return cachePolicy;
         }
 
         @Override
         public Object parse(Object context, Object... args) throws Exception {
             ///////////////////////////////
             Map<String, Object> variables = new HashMap<>();
-            Map<String, Object> vars = ReflectionUtil.extractVariables(context);
-            variables.putAll(vars);
+            VariableExtractor.of(context.getClass()).extract(context, variables);
 
             instance.extractCustomVariables(variables, context);
             ///////////////////////////////
 
-            ScriptContext scriptContext = engine.getContext();
-            final Bindings bindings = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
-            for(Map.Entry<String, Object> entry : variables.entrySet()){
-                String key = entry.getKey();
-                Object value = entry.getValue();
-                bindings.put(key, value);
-            }
-
-            try {
-                compiled.eval(scriptContext);
-            } catch (ScriptException e2) {
-                e2.printStackTrace();
-            }
-
-            Invocable invocable = (Invocable) compiled.getEngine();
             Callable<Object> call = new Callable<Object>(){
                 @Override
                 public Object call() throws Exception {
-                    Object argObj = args;
-
                     if(TriggerReactor.getInstance().isDebugging()){
                         Object result = null;
                         long start = System.currentTimeMillis();
-                        result = invocable.invokeFunction(placeholderName, argObj);
+                        result = function.invoke(variables, args);
                         long end = System.currentTimeMillis();
                         TriggerReactor.getInstance().getLogger().info(placeholderName+" placeholder -- "+(end - start)+"ms");
                         return result;
                     }else{
-                        return invocable.invokeFunction(placeholderName, argObj);
+                        return function.invoke(variables, args);
                     }
                 }
             };
 
-            if(TriggerReactor.getInstance().isServerThread()){
-                Object result = null;
-                try {
-                    result = call.call();
-                } catch (Exception e1) {
-                    e1.printStackTrace();
-                    throw new Exception("$"+placeholderName+" encountered error.", e1);
-                }
-                return result;
-            }else{
-                Future<Object> future = runSyncTaskForFuture(call);
-
-                Object result = null;
-                try {
-                    result = future.get(5, TimeUnit.SECONDS);
-                } catch (InterruptedException | ExecutionException e1) {
-                    throw new Exception("$"+placeholderName+" encountered error.", e1);
-                } catch (TimeoutException e1) {
-                    throw new Exception("$"+placeholderName+" was stopped. It took longer than 5 seconds to process. Is the server lagging?", e1);
+            return callWithAffinity(call, "$"+placeholderName);
+        }
+    }
+
+    /**
+     * Placeholder implemented in Java, which doesn't go through the script engine at all. Register it
+     * with {@link AbstractPlaceholderManager#registerNative(String, Placeholder)}.
+     */
+    public static abstract class NativePlaceholder extends Placeholder{
+        private final String placeholderName;
+        private final ThreadAffinity affinity;
+
+        public NativePlaceholder(String placeholderName, ThreadAffinity affinity) {
+            this.placeholderName = placeholderName;
+            this.affinity = affinity;
+        }
+
+        public String getPlaceholderName() {
+            return placeholderName;
+        }
+
+        @Override
+        public ThreadAffinity getThreadAffinity() {
+            return affinity;
+        }
+
+        @Override
+        public Object parse(Object context, Object... args) throws Exception {
+            Callable<Object> call = new Callable<Object>(){
+                @Override
+                public Object call() throws Exception {
+                    return replace(context, args);
                 }
-                return result;
-            }
+            };
+
+            return callWithAffinity(call, "$"+placeholderName);
         }
+
+        /**
+         * Find the value. Runs in the thread {@link #getThreadAffinity()} allows.
+         * @param context the context
+         * @param args the arguments
+         * @return same as {@link Placeholder#parse(Object, Object...)}
+         * @throws Exception
+         */
+        protected abstract Object replace(Object context, Object[] args) throws Exception;
     }
 }
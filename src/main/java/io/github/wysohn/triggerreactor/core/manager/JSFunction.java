@@ -0,0 +1,127 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+/**
+ * The function defined in the .js file of an Executor or a Placeholder. Each invocation borrows its own
+ * ScriptContext, so the variables of one invocation never leak into another one running at the same time
+ * in a different thread. The source code is evaluated only once per ScriptContext, and the contexts are
+ * reused afterwards, so the function is not defined again on every call. The variables put for a call are
+ * taken out again before the context is reused, so a later call never sees them either.
+ * @author wysohn
+ *
+ */
+final class JSFunction {
+    private static final int MAX_IDLE = 8;
+
+    //names used by the invoker script. Unlikely to be used by the scripts
+    private static final String NAME_VAR = "__triggerreactor_function";
+    private static final String ARGS_VAR = "__triggerreactor_args";
+
+    private final String functionName;
+    private final ScriptEngine engine;
+    private final CompiledScript compiled;
+    private final CompiledScript invoker;
+
+    private final Queue<ScriptContext> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     *
+     * @param functionName name of the function to call. Usually same as the file name.
+     * @param engine the engine. It must implement {@link Compilable}.
+     * @param sourceCode the source code which defines the function
+     * @throws ScriptException if the source code can't be compiled.
+     */
+    JSFunction(String functionName, ScriptEngine engine, String sourceCode) throws ScriptException {
+        this.functionName = functionName;
+        this.engine = engine;
+
+        Compilable compiler = (Compilable) engine;
+        this.compiled = compiler.compile(sourceCode);
+        this.invoker = compiler.compile("this[" + NAME_VAR + "](" + ARGS_VAR + ")");
+    }
+
+    /**
+     * Call the function. Thread safe.
+     * @param variables the variables the function can read while running
+     * @param args the arguments. Passed to the function as a single array like before.
+     * @return the return value of the function
+     * @throws ScriptException
+     */
+    Object invoke(Map<String, Object> variables, Object[] args) throws ScriptException {
+        ScriptContext context = acquire();
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+
+        //values defined by the script itself which have the same names as the variables
+        Map<String, Object> shadowed = null;
+        try {
+            for(Entry<String, Object> entry : variables.entrySet()){
+                Object previous = bindings.put(entry.getKey(), entry.getValue());
+                if(previous != null){
+                    if(shadowed == null)
+                        shadowed = new HashMap<>();
+                    shadowed.put(entry.getKey(), previous);
+                }
+            }
+            bindings.put(ARGS_VAR, args);
+
+            return invoker.eval(context);
+        } finally {
+            for(String key : variables.keySet())
+                bindings.remove(key);
+            bindings.remove(ARGS_VAR);
+            if(shadowed != null)
+                bindings.putAll(shadowed);
+
+            release(context);
+        }
+    }
+
+    private ScriptContext acquire() throws ScriptException {
+        ScriptContext context = idle.poll();
+        if(context != null)
+            return context;
+
+        context = new SimpleScriptContext();
+        context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+        context.setAttribute(NAME_VAR, functionName, ScriptContext.ENGINE_SCOPE);
+
+        //define the function in this context
+        compiled.eval(context);
+        return context;
+    }
+
+    private void release(ScriptContext context) {
+        if(idle.size() < MAX_IDLE)
+            idle.offer(context);
+    }
+}
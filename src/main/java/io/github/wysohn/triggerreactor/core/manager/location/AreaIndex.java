@@ -0,0 +1,452 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager.location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * R-tree of the Areas in one world. Each Area is stored once no matter how many chunks it covers, and
+ * the Areas containing a point or overlapping a box are found without looking at the other Areas.
+ * <p>
+ * The world of the Areas is not checked; keep one index per world.
+ * <p>
+ * Thread safe. Any number of threads can search at the same time, but adding or removing blocks the searches.
+ * @author wysohn
+ *
+ * @param <V> the value stored with each Area
+ */
+public class AreaIndex<V> {
+    private static final int MAX_ENTRIES = 8;
+    private static final int MIN_ENTRIES = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Node root = new Node(true);
+    private int size = 0;
+
+    /**
+     * Add the Area. Adding the same Area twice stores it twice; remove it first to replace the value.
+     * @param area the area
+     * @param value the value
+     */
+    public void put(Area area, V value) {
+        lock.writeLock().lock();
+        try {
+            insert(new Item<V>(area, value));
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the Area.
+     * @param area the area to remove. Compared with {@link Area#equals(Object)}
+     * @return the value of the removed Area; null if the Area was not in this index.
+     */
+    public V remove(Area area) {
+        lock.writeLock().lock();
+        try {
+            Item<V> item = new Item<V>(area, null);
+            Node leaf = findLeaf(root, item);
+            if(leaf == null)
+                return null;
+
+            V value = null;
+            for(int i = 0; i < leaf.children.size(); i++){
+                @SuppressWarnings("unchecked")
+                Item<V> child = (Item<V>) leaf.children.get(i);
+                if(child.area.equals(area)){
+                    value = child.value;
+                    leaf.children.remove(i);
+                    break;
+                }
+            }
+
+            condense(leaf);
+            size--;
+            return value;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the Area which contains the point. If more than one Area contain the point, any one of them is returned.
+     * @return the Area and its value; null if no Area contains the point.
+     */
+    public Map.Entry<Area, V> get(int x, int y, int z) {
+        lock.readLock().lock();
+        try {
+            return get(root, x, y, z);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find all the Areas which share at least one block with the given Area, including the Area itself
+     * if it's in this index.
+     * @param area the area
+     * @return the Areas and their values. Never null.
+     */
+    public List<Map.Entry<Area, V>> getOverlapping(Area area) {
+        Item<V> box = new Item<V>(area, null);
+
+        lock.readLock().lock();
+        try {
+            List<Map.Entry<Area, V>> result = new ArrayList<>();
+            collectOverlapping(root, box, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            root = new Node(true);
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<Area, V> get(Node node, int x, int y, int z) {
+        for(Box child : node.children){
+            if(!child.contains(x, y, z))
+                continue;
+
+            if(node.leaf)
+                return (Item<V>) child;
+
+            Map.Entry<Area, V> found = get((Node) child, x, y, z);
+            if(found != null)
+                return found;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectOverlapping(Node node, Box box, List<Map.Entry<Area, V>> result) {
+        for(Box child : node.children){
+            if(!child.intersects(box))
+                continue;
+
+            if(node.leaf)
+                result.add((Item<V>) child);
+            else
+                collectOverlapping((Node) child, box, result);
+        }
+    }
+
+    private void insert(Box item) {
+        Node node = chooseLeaf(item);
+        node.add(item);
+
+        Node split = null;
+        if(node.children.size() > MAX_ENTRIES)
+            split = split(node);
+
+        //fix the bounds up to the root, splitting the parents if they overflow
+        while(node != root){
+            Node parent = node.parent;
+            parent.include(node);
+
+            if(split != null){
+                parent.add(split);
+                split = parent.children.size() > MAX_ENTRIES ? split(parent) : null;
+            }
+            node = parent;
+        }
+
+        if(split != null){
+            Node newRoot = new Node(false);
+            newRoot.add(root);
+            newRoot.add(split);
+            root = newRoot;
+        }
+    }
+
+    //descend to the leaf which grows the least by adding the box
+    private Node chooseLeaf(Box box) {
+        Node node = root;
+        while(!node.leaf){
+            Node best = null;
+            long bestEnlargement = Long.MAX_VALUE;
+            long bestVolume = Long.MAX_VALUE;
+            for(Box child : node.children){
+                long volume = child.volume();
+                long enlargement = child.volumeWith(box) - volume;
+                if(enlargement < bestEnlargement || (enlargement == bestEnlargement && volume < bestVolume)){
+                    best = (Node) child;
+                    bestEnlargement = enlargement;
+                    bestVolume = volume;
+                }
+            }
+            node = best;
+        }
+        return node;
+    }
+
+    //quadratic split. Moves about half of the children to the new node
+    private Node split(Node node) {
+        List<Box> remaining = new ArrayList<>(node.children);
+        node.children.clear();
+        node.reset();
+
+        Node sibling = new Node(node.leaf);
+
+        //pick the two which waste the most space together as the seeds
+        int seed1 = 0, seed2 = 1;
+        long worst = Long.MIN_VALUE;
+        for(int i = 0; i < remaining.size(); i++){
+            for(int j = i + 1; j < remaining.size(); j++){
+                Box a = remaining.get(i), b = remaining.get(j);
+                long waste = a.volumeWith(b) - a.volume() - b.volume();
+                if(waste > worst){
+                    worst = waste;
+                    seed1 = i;
+                    seed2 = j;
+                }
+            }
+        }
+
+        node.add(remaining.get(seed1));
+        sibling.add(remaining.get(seed2));
+        remaining.remove(seed2);
+        remaining.remove(seed1);
+
+        while(!remaining.isEmpty()){
+            //make sure both have the minimum number of entries
+            if(node.children.size() + remaining.size() == MIN_ENTRIES){
+                for(Box box : remaining)
+                    node.add(box);
+                break;
+            }
+            if(sibling.children.size() + remaining.size() == MIN_ENTRIES){
+                for(Box box : remaining)
+                    sibling.add(box);
+                break;
+            }
+
+            //the one with the strongest preference goes first
+            int next = 0;
+            long maxDiff = -1;
+            for(int i = 0; i < remaining.size(); i++){
+                Box box = remaining.get(i);
+                long diff = Math.abs((node.volumeWith(box) - node.volume()) - (sibling.volumeWith(box) - sibling.volume()));
+                if(diff > maxDiff){
+                    maxDiff = diff;
+                    next = i;
+                }
+            }
+
+            Box box = remaining.remove(next);
+            long grow1 = node.volumeWith(box) - node.volume();
+            long grow2 = sibling.volumeWith(box) - sibling.volume();
+            if(grow1 < grow2 || (grow1 == grow2 && node.children.size() <= sibling.children.size()))
+                node.add(box);
+            else
+                sibling.add(box);
+        }
+
+        return sibling;
+    }
+
+    private Node findLeaf(Node node, Item<V> item) {
+        for(Box child : node.children){
+            if(!child.containsBox(item))
+                continue;
+
+            if(node.leaf){
+                if(((Item<?>) child).area.equals(item.area))
+                    return node;
+            }else{
+                Node found = findLeaf((Node) child, item);
+                if(found != null)
+                    return found;
+            }
+        }
+        return null;
+    }
+
+    //remove the nodes which became too small after the removal, and put their entries back
+    private void condense(Node leaf) {
+        List<Node> eliminated = new ArrayList<>();
+
+        Node node = leaf;
+        while(node != root){
+            Node parent = node.parent;
+            if(node.children.size() < MIN_ENTRIES){
+                parent.children.remove(node);
+                eliminated.add(node);
+            }
+            parent.recalculate();
+            node = parent;
+        }
+        root.recalculate();
+
+        for(Node removed : eliminated)
+            reinsert(removed);
+
+        //shorten the tree if the root has only one child
+        while(!root.leaf && root.children.size() == 1){
+            root = (Node) root.children.get(0);
+            root.parent = null;
+        }
+    }
+
+    private void reinsert(Node removed) {
+        if(removed.leaf){
+            for(Box item : removed.children)
+                insert(item);
+        }else{
+            for(Box child : removed.children)
+                reinsert((Node) child);
+        }
+    }
+
+    private static abstract class Box {
+        int minX, minY, minZ;
+        int maxX, maxY, maxZ;
+
+        boolean contains(int x, int y, int z) {
+            return minX <= x && x <= maxX
+                    && minY <= y && y <= maxY
+                    && minZ <= z && z <= maxZ;
+        }
+
+        boolean containsBox(Box other) {
+            return minX <= other.minX && other.maxX <= maxX
+                    && minY <= other.minY && other.maxY <= maxY
+                    && minZ <= other.minZ && other.maxZ <= maxZ;
+        }
+
+        boolean intersects(Box other) {
+            return minX <= other.maxX && other.minX <= maxX
+                    && minY <= other.maxY && other.minY <= maxY
+                    && minZ <= other.maxZ && other.minZ <= maxZ;
+        }
+
+        long volume() {
+            return (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        }
+
+        long volumeWith(Box other) {
+            return (long) (Math.max(maxX, other.maxX) - Math.min(minX, other.minX) + 1)
+                    * (Math.max(maxY, other.maxY) - Math.min(minY, other.minY) + 1)
+                    * (Math.max(maxZ, other.maxZ) - Math.min(minZ, other.minZ) + 1);
+        }
+    }
+
+    private static final class Node extends Box {
+        final boolean leaf;
+        final List<Box> children = new ArrayList<>(MAX_ENTRIES + 1);
+        Node parent;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            reset();
+        }
+
+        void add(Box child) {
+            children.add(child);
+            if(child instanceof Node)
+                ((Node) child).parent = this;
+            include(child);
+        }
+
+        void include(Box child) {
+            minX = Math.min(minX, child.minX);
+            minY = Math.min(minY, child.minY);
+            minZ = Math.min(minZ, child.minZ);
+            maxX = Math.max(maxX, child.maxX);
+            maxY = Math.max(maxY, child.maxY);
+            maxZ = Math.max(maxZ, child.maxZ);
+        }
+
+        void reset() {
+            minX = minY = minZ = Integer.MAX_VALUE;
+            maxX = maxY = maxZ = Integer.MIN_VALUE;
+        }
+
+        void recalculate() {
+            reset();
+            for(Box child : children)
+                include(child);
+        }
+
+        //empty nodes have no volume
+        @Override
+        long volume() {
+            return children.isEmpty() ? 0L : super.volume();
+        }
+
+        @Override
+        long volumeWith(Box other) {
+            return children.isEmpty() ? other.volume() : super.volumeWith(other);
+        }
+    }
+
+    private static final class Item<V> extends Box implements Map.Entry<Area, V> {
+        final Area area;
+        final V value;
+
+        Item(Area area, V value) {
+            this.area = area;
+            this.value = value;
+
+            minX = area.smallest.getX();
+            minY = area.smallest.getY();
+            minZ = area.smallest.getZ();
+            maxX = area.largest.getX();
+            maxY = area.largest.getY();
+            maxZ = area.largest.getZ();
+        }
+
+        @Override
+        public Area getKey() {
+            return area;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
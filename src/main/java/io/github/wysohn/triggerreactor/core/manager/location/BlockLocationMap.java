@@ -0,0 +1,197 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager.location;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.github.wysohn.triggerreactor.tools.LongHashMap;
+import io.github.wysohn.triggerreactor.tools.LongHashMap.EntryVisitor;
+
+/**
+ * Map of block locations. Each world has its own {@link LongHashMap} keyed by {@link LocationKeys#blockKey(int, int, int)},
+ * so looking up a block doesn't create any object. The block columns holding any value are also kept in
+ * a {@link ColumnBitmap}, so most of the lookups of the empty blocks end before the map is searched.
+ * <p>
+ * Thread safe. The worlds are kept in an array which is copied when a world is added, and the bitmaps
+ * can be read while they are updated, so the lookups of the empty blocks take no lock at all. The other
+ * lookups can run at the same time, but putting or removing blocks them.
+ * @author wysohn
+ *
+ * @param <V> type of the values
+ */
+public class BlockLocationMap<V> {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //replaced with a copy when a world is added. There are only a few worlds, so it's just scanned
+    @SuppressWarnings("unchecked")
+    private volatile World<V>[] worlds = new World[0];
+
+    private World<V> getWorld(String world) {
+        for(World<V> w : worlds){
+            if(w.name.equals(world))
+                return w;
+        }
+        return null;
+    }
+
+    public V get(String world, int x, int y, int z) {
+        World<V> w = getWorld(world);
+        if(w == null || !w.columns.contains(x, z))
+            return null;
+
+        lock.readLock().lock();
+        try {
+            return w.blocks.get(LocationKeys.blockKey(x, y, z));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public V get(SimpleLocation sloc) {
+        return get(sloc.getWorld(), sloc.getX(), sloc.getY(), sloc.getZ());
+    }
+
+    /**
+     * @param sloc the location
+     * @param value the value. Can't be null.
+     * @return the previous value; null if there was none.
+     */
+    public V put(SimpleLocation sloc, V value) {
+        lock.writeLock().lock();
+        try {
+            World<V> w = getWorld(sloc.getWorld());
+            if(w == null){
+                w = new World<>(sloc.getWorld());
+                World<V>[] copy = Arrays.copyOf(worlds, worlds.length + 1);
+                copy[copy.length - 1] = w;
+                worlds = copy;
+            }
+
+            V previous = w.blocks.put(LocationKeys.blockKey(sloc.getX(), sloc.getY(), sloc.getZ()), value);
+            if(previous == null)
+                w.columns.add(sloc.getX(), sloc.getZ());
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param sloc the location
+     * @return the removed value; null if there was none.
+     */
+    public V remove(SimpleLocation sloc) {
+        lock.writeLock().lock();
+        try {
+            World<V> w = getWorld(sloc.getWorld());
+            if(w == null)
+                return null;
+
+            V removed = w.blocks.remove(LocationKeys.blockKey(sloc.getX(), sloc.getY(), sloc.getZ()));
+            if(removed != null)
+                w.columns.remove(sloc.getX(), sloc.getZ());
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            worlds = new World[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return copy of all the entries. Changing it doesn't change this map.
+     */
+    public List<Map.Entry<SimpleLocation, V>> entries() {
+        lock.readLock().lock();
+        try {
+            List<Map.Entry<SimpleLocation, V>> entries = new ArrayList<>();
+            for(World<V> w : worlds)
+                w.blocks.forEach(new EntryCollector<V>(w.name, entries, false, 0L));
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param scloc the chunk
+     * @return copy of the entries in the chunk. Changing it doesn't change this map.
+     */
+    public List<Map.Entry<SimpleLocation, V>> entriesInChunk(SimpleChunkLocation scloc) {
+        List<Map.Entry<SimpleLocation, V>> entries = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            World<V> w = getWorld(scloc.getWorld());
+            if(w == null)
+                return entries;
+
+            w.blocks.forEach(new EntryCollector<V>(scloc.getWorld(), entries, true,
+                    LocationKeys.chunkKey(scloc.getI(), scloc.getJ())));
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static class World<V>{
+        final String name;
+        final LongHashMap<V> blocks = new LongHashMap<>();
+        final ColumnBitmap columns = new ColumnBitmap();
+
+        World(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class EntryCollector<V> implements EntryVisitor<V>{
+        private final String world;
+        private final List<Map.Entry<SimpleLocation, V>> entries;
+        private final boolean filterChunk;
+        private final long chunkKey;
+
+        public EntryCollector(String world, List<Map.Entry<SimpleLocation, V>> entries, boolean filterChunk, long chunkKey) {
+            this.world = world;
+            this.entries = entries;
+            this.filterChunk = filterChunk;
+            this.chunkKey = chunkKey;
+        }
+
+        @Override
+        public void visit(long key, V value) {
+            if(filterChunk && LocationKeys.chunkKeyOf(key) != chunkKey)
+                return;
+
+            SimpleLocation sloc = new SimpleLocation(world, LocationKeys.blockX(key), LocationKeys.blockY(key), LocationKeys.blockZ(key));
+            entries.add(new SimpleEntry<SimpleLocation, V>(sloc, value));
+        }
+    }
+}
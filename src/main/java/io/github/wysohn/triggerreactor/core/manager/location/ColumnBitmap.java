@@ -0,0 +1,151 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager.location;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.github.wysohn.triggerreactor.tools.LongHashMap;
+import io.github.wysohn.triggerreactor.tools.LongHashMap.EntryVisitor;
+
+/**
+ * Remembers which block columns (x and z) of one world have at least one block in them.
+ * Each chunk with blocks has a 256 bit bitmap, one bit per column, and the chunks are summarized
+ * again by a small table of counters, so asking about a column in an empty chunk doesn't even
+ * look up the chunk.
+ * <p>
+ * {@link #contains(int, int)} doesn't lock, and can be called while a block is being added or removed.
+ * The table of the chunks is copied and replaced when a chunk gets its first block or loses its last one,
+ * so it's never seen half updated. Adding and removing must be done by one thread at a time.
+ * @author wysohn
+ *
+ */
+public class ColumnBitmap {
+    private static final int SUMMARY_BITS = 10;
+
+    //never modified once published; a new one is published instead
+    private volatile Chunks chunks = new Chunks(new int[1 << SUMMARY_BITS], new LongHashMap<Chunk>());
+
+    private static int summaryIndex(long chunkKey) {
+        return (int) ((chunkKey * 0x9E3779B97F4A7C15L) >>> (64 - SUMMARY_BITS));
+    }
+
+    private static int columnIndex(int x, int z) {
+        return (x & 15) << 4 | (z & 15);
+    }
+
+    /**
+     * @return false if there is surely no block in the column; true if there is.
+     */
+    public boolean contains(int x, int z) {
+        Chunks chunks = this.chunks;
+
+        long chunkKey = LocationKeys.chunkKey(x >> 4, z >> 4);
+        if(chunks.summary[summaryIndex(chunkKey)] == 0)
+            return false;
+
+        Chunk chunk = chunks.table.get(chunkKey);
+        if(chunk == null)
+            return false;
+
+        int column = columnIndex(x, z);
+        return (chunk.bits.get(column >> 6) & (1L << column)) != 0;
+    }
+
+    /**
+     * Count one more block in the column.
+     */
+    public void add(int x, int z) {
+        long chunkKey = LocationKeys.chunkKey(x >> 4, z >> 4);
+
+        Chunk chunk = chunks.table.get(chunkKey);
+        boolean created = chunk == null;
+        if(created)
+            chunk = new Chunk();
+
+        int column = columnIndex(x, z);
+        if(chunk.counts[column]++ == 0)
+            chunk.bits.set(column >> 6, chunk.bits.get(column >> 6) | (1L << column));
+        chunk.total++;
+
+        if(created)
+            chunks = chunks.with(chunkKey, chunk);
+    }
+
+    /**
+     * Count one less block in the column. Must be called only for the blocks counted by {@link #add(int, int)}.
+     */
+    public void remove(int x, int z) {
+        long chunkKey = LocationKeys.chunkKey(x >> 4, z >> 4);
+
+        Chunk chunk = chunks.table.get(chunkKey);
+        if(chunk == null)
+            return;
+
+        int column = columnIndex(x, z);
+        if(chunk.counts[column] == 0)
+            return;
+
+        if(--chunk.counts[column] == 0)
+            chunk.bits.set(column >> 6, chunk.bits.get(column >> 6) & ~(1L << column));
+
+        if(--chunk.total == 0)
+            chunks = chunks.without(chunkKey);
+    }
+
+    private static class Chunks{
+        final int[] summary;
+        final LongHashMap<Chunk> table;
+
+        Chunks(int[] summary, LongHashMap<Chunk> table) {
+            this.summary = summary;
+            this.table = table;
+        }
+
+        Chunks with(long chunkKey, Chunk chunk) {
+            Chunks copy = new Chunks(summary.clone(), copyOf(table, table.size() + 1));
+            copy.table.put(chunkKey, chunk);
+            copy.summary[summaryIndex(chunkKey)]++;
+            return copy;
+        }
+
+        Chunks without(long chunkKey) {
+            Chunks copy = new Chunks(summary.clone(), copyOf(table, table.size()));
+            copy.table.remove(chunkKey);
+            copy.summary[summaryIndex(chunkKey)]--;
+            return copy;
+        }
+
+        private static LongHashMap<Chunk> copyOf(LongHashMap<Chunk> table, int expected) {
+            LongHashMap<Chunk> copy = new LongHashMap<>(expected);
+            table.forEach(new EntryVisitor<Chunk>(){
+                @Override
+                public void visit(long key, Chunk value) {
+                    copy.put(key, value);
+                }
+            });
+            return copy;
+        }
+    }
+
+    private static class Chunk{
+        //read without lock, so the bits written later are seen by the readers
+        final AtomicLongArray bits = new AtomicLongArray(4);
+        //number of blocks in each column
+        final int[] counts = new int[256];
+        int total = 0;
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager.location;
+
+/**
+ * Packs block and chunk coordinates into long values, so the locations can be used as keys without
+ * creating any object.
+ * <p>
+ * Block keys hold 26 bits of x, 26 bits of z, and 12 bits of y, which covers the whole Minecraft world.
+ * @author wysohn
+ *
+ */
+public final class LocationKeys {
+    private LocationKeys() {
+
+    }
+
+    public static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int blockX(long key) {
+        return (int) (key >> 38);
+    }
+
+    public static int blockY(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    public static int blockZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param blockKey key made by {@link #blockKey(int, int, int)}
+     * @return key of the chunk which the block belongs to
+     */
+    public static long chunkKeyOf(long blockKey) {
+        return chunkKey(blockX(blockKey) >> 4, blockZ(blockKey) >> 4);
+    }
+}
@@ -19,6 +19,8 @@ package io.github.wysohn.triggerreactor.core.manager.trigger;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -34,7 +36,7 @@ import org.bukkit.entity.Entity;
 
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
 import io.github.wysohn.triggerreactor.core.manager.location.Area;
-import io.github.wysohn.triggerreactor.core.manager.location.SimpleChunkLocation;
+import io.github.wysohn.triggerreactor.core.manager.location.AreaIndex;
 import io.github.wysohn.triggerreactor.core.manager.location.SimpleLocation;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Interpreter;
 import io.github.wysohn.triggerreactor.core.script.wrapper.SelfReference;
@@ -45,12 +47,13 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
     protected static final String LARGEST = "Largest";
     protected static final String SYNC = "Sync";
 
-    protected Map<SimpleChunkLocation, Map<Area, AreaTrigger>> areaTriggers = new ConcurrentHashMap<>();
+    //the Areas of each world
+    protected Map<String, AreaIndex<AreaTrigger>> areaTriggers = new ConcurrentHashMap<>();
     protected Map<String, AreaTrigger> nameMapper = new HashMap<>();
 
     /**
      * The child class should update this map with its own way. Though, the entity which garbage-corrected will
-     * be also deleted from this map automatically.
+     * be also deleted from this map automatically if it was added with {@link #trackEntity(Entity, SimpleLocation)}.
      * <b>Adding or removing from this map also has to be reflected in entityTrackMap as well</b>
      */
     protected final Map<UUID, SimpleLocation> entityLocationMap = new ConcurrentHashMap<>();
@@ -60,6 +63,9 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
      */
     protected final Map<UUID, WeakReference<Entity>> entityTrackMap = new ConcurrentHashMap<>();
 
+    //the references of the garbage-collected entities show up here
+    private final ReferenceQueue<Entity> collectedEntities = new ReferenceQueue<>();
+
     public AbstractAreaTriggerManager(TriggerReactor plugin, SelfReference ref, File tirggerFolder) {
         super(plugin, ref, tirggerFolder);
 
@@ -68,28 +74,16 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
             @Override
             public void run() {
                 while(plugin.isEnabled() && !Thread.interrupted()) {
-                    //clean up the reference map
-                    Set<UUID> deletes = new HashSet<>();
-                    for(Entry<UUID, WeakReference<Entity>> entry : entityTrackMap.entrySet()) {
-                        if(entry.getValue().get() == null)
-                            deletes.add(entry.getKey());
-                    }
-                    for(UUID delete : deletes) {
-                        entityTrackMap.remove(delete);
-                        entityLocationMap.remove(delete);
-                    }
-
-                    Set<String> keys = nameMapper.keySet();
-                    for(String key : keys) {
-                        AreaTrigger area = nameMapper.get(key);
-                        area.getEntities();
-                    }
-
+                    //sleeps until an entity is garbage-collected. Wakes up once a while to see if the plugin is disabled
+                    Reference<? extends Entity> collected;
                     try {
-                        Thread.sleep(50L);
+                        collected = collectedEntities.remove(1000L);
                     } catch (InterruptedException e) {
-
+                        break;
                     }
+
+                    if(collected != null)
+                        forgetEntity((EntityReference) collected);
                 }
             }
 
@@ -99,6 +93,29 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
         referenceCleaningThread.start();
     }
 
+    /**
+     * Start tracking the entity. The entity is removed from entityTrackMap, entityLocationMap, and the Area it was in
+     * when it is garbage-collected.
+     * @param entity the entity
+     * @param sloc the current location of the entity
+     */
+    protected void trackEntity(Entity entity, SimpleLocation sloc) {
+        UUID uuid = entity.getUniqueId();
+        entityTrackMap.put(uuid, new EntityReference(entity, uuid, collectedEntities));
+        entityLocationMap.put(uuid, sloc);
+    }
+
+    private void forgetEntity(EntityReference ref) {
+        //the entity may have been tracked again with a new reference already
+        if(!entityTrackMap.remove(ref.uuid, ref))
+            return;
+
+        SimpleLocation sloc = entityLocationMap.remove(ref.uuid);
+        Entry<Area, AreaTrigger> area = getAreaForLocation(sloc);
+        if(area != null)
+            area.getValue().removeEntity(ref.uuid);
+    }
+
     @Override
     public void reload() {
         entityLocationMap.clear();
@@ -190,18 +207,7 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
 
     @Override
     public void saveAll() {
-        Set<AreaTrigger> saveReady = new HashSet<>();
-
-        for(Entry<SimpleChunkLocation, Map<Area, AreaTrigger>> oentry : areaTriggers.entrySet()){
-            SimpleChunkLocation scloc = oentry.getKey();
-
-            for(Entry<Area, AreaTrigger> entry : oentry.getValue().entrySet()){
-                Area area = entry.getKey();
-                AreaTrigger trigger = entry.getValue();
-
-                saveReady.add(trigger);
-            }
-        }
+        Set<AreaTrigger> saveReady = new HashSet<>(nameMapper.values());
 
         for(AreaTrigger trigger : saveReady){
             Area area = trigger.getArea();
@@ -255,42 +261,33 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
         if(sloc == null)
             return null;
 
-        SimpleChunkLocation scloc = new SimpleChunkLocation(sloc);
-        if(!areaTriggers.containsKey(scloc))
+        AreaIndex<AreaTrigger> index = areaTriggers.get(sloc.getWorld());
+        if(index == null)
             return null;
 
-        for(Entry<Area, AreaTrigger> entry : areaTriggers.get(scloc).entrySet()){
-            if(entry.getKey().isInThisArea(sloc))
-                return entry;
-        }
-
-        return null;
+        return index.get(sloc.getX(), sloc.getY(), sloc.getZ());
     }
 
     /**
      * get all the area that is conflicting with given area. This does not include the area itself.
-     * It's quite a CPU intensive work; use it wisely
      * @param area
      * @return never be null; can be empty if no conflicts are found
      */
     public Set<Area> getConflictingAreas(Area area) {
         Set<Area> conflicts = new HashSet<>();
 
-        Set<SimpleChunkLocation> sclocs = Area.getAllChunkLocations(area);
-        for(SimpleChunkLocation scloc : sclocs){
-            Map<Area, AreaTrigger> map = areaTriggers.get(scloc);
-            if(map == null)
-                continue;
+        AreaIndex<AreaTrigger> index = areaTriggers.get(area.getSmallest().getWorld());
+        if(index == null)
+            return conflicts;
 
-            for(Entry<Area, AreaTrigger> mapentry : map.entrySet()){
-                Area areaOther = mapentry.getKey();
+        for(Entry<Area, AreaTrigger> entry : index.getOverlapping(area)){
+            Area areaOther = entry.getKey();
 
-                if(area.equals(areaOther))
-                    continue;
+            if(area.equals(areaOther))
+                continue;
 
-                if(Area.isConflicting(area, areaOther)){
-                    conflicts.add(areaOther);
-                }
+            if(Area.isConflicting(area, areaOther)){
+                conflicts.add(areaOther);
             }
         }
 
@@ -327,16 +324,20 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
     protected void setupArea(AreaTrigger trigger) {
         Area area = trigger.area;
 
-        Set<SimpleChunkLocation> sclocs = Area.getAllChunkLocations(area);
-        for(SimpleChunkLocation scloc : sclocs){
-            Map<Area, AreaTrigger> map = areaTriggers.get(scloc);
-            if(map == null){
-                map = new ConcurrentHashMap<>();
-                areaTriggers.put(scloc, map);
-            }
-
-            map.put(area, trigger);
+        AreaIndex<AreaTrigger> index = areaTriggers.get(area.getSmallest().getWorld());
+        if(index == null){
+            index = new AreaIndex<>();
+            areaTriggers.put(area.getSmallest().getWorld(), index);
         }
+
+        index.remove(area);
+        index.put(area, trigger);
+    }
+
+    private void removeArea(Area area) {
+        AreaIndex<AreaTrigger> index = areaTriggers.get(area.getSmallest().getWorld());
+        if(index != null)
+            index.remove(area);
     }
 
     /**
@@ -358,10 +359,7 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
         if(trigger == null)
             return false;
 
-        for(SimpleChunkLocation scloc : Area.getAllChunkLocations(trigger.area)){
-            Map<Area, AreaTrigger> map = areaTriggers.get(scloc);
-            map.remove(trigger.area);
-        }
+        removeArea(trigger.area);
 
         deleteInfo(trigger);
 
@@ -394,10 +392,7 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
 
         AreaTrigger trigger = areaEntry.getValue();
 
-        for(SimpleChunkLocation scloc : Area.getAllChunkLocations(areaEntry.getKey())){
-            Map<Area, AreaTrigger> map = areaTriggers.get(scloc);
-            map.remove(areaEntry.getKey());
-        }
+        removeArea(areaEntry.getKey());
 
         deleteInfo(nameMapper.remove(trigger.getTriggerName()));
         return true;
@@ -407,6 +402,15 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
         ENTER, EXIT;
     }
 
+    private static class EntityReference extends WeakReference<Entity>{
+        private final UUID uuid;
+
+        public EntityReference(Entity entity, UUID uuid, ReferenceQueue<Entity> queue) {
+            super(entity, queue);
+            this.uuid = uuid;
+        }
+    }
+
     @Override
     protected void deleteInfo(Trigger trigger) {
         FileUtil.delete(new File(folder, trigger.getTriggerName()));
@@ -525,7 +529,7 @@ public abstract class AbstractAreaTriggerManager extends AbstractTriggerManager
                 if (entity != null) {
                     entities.add(entity);
                 } else {
-                    remove.remove(entry.getKey());
+                    remove.add(entry.getKey());
                 }
             }
 
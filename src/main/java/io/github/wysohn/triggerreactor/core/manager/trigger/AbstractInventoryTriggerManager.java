@@ -317,12 +317,17 @@ public abstract class AbstractInventoryTriggerManager extends AbstractTriggerMan
 
         @Override
         protected void start(Object e, Map<String, Object> scriptVars, Interpreter interpreter, boolean sync) {
+            boolean finished = true;
             try {
-                interpreter.startWithContextAndInterrupter(e,
+                finished = interpreter.run(e,
                         TriggerReactor.getInstance().createInterrupterForInv(e, interpreter, cooldowns, inventoryMap));
             } catch (Exception ex) {
                 TriggerReactor.getInstance().handleException(e,
                         new Exception("Error occurred while processing Trigger [" + getTriggerName() + "]!", ex));
+            } finally {
+                //suspended by #WAIT. It will be given back when resume() is done
+                if(finished && interpreterPool != null)
+                    interpreterPool.release(interpreter);
             }
         }
 
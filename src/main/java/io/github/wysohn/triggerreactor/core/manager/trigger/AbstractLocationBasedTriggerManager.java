@@ -25,11 +25,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import io.github.wysohn.triggerreactor.core.bridge.ICommandSender;
 import io.github.wysohn.triggerreactor.core.bridge.player.IPlayer;
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
+import io.github.wysohn.triggerreactor.core.manager.location.BlockLocationMap;
 import io.github.wysohn.triggerreactor.core.manager.location.SimpleChunkLocation;
 import io.github.wysohn.triggerreactor.core.manager.location.SimpleLocation;
 import io.github.wysohn.triggerreactor.core.manager.trigger.AbstractTriggerManager.Trigger;
@@ -37,7 +37,7 @@ import io.github.wysohn.triggerreactor.core.script.wrapper.SelfReference;
 import io.github.wysohn.triggerreactor.tools.FileUtil;
 
 public abstract class AbstractLocationBasedTriggerManager<T extends Trigger> extends AbstractTriggerManager {
-    protected Map<SimpleChunkLocation, Map<SimpleLocation, T>> locationTriggers = new ConcurrentHashMap<>();
+    protected BlockLocationMap<T> locationTriggers = new BlockLocationMap<>();
     private Map<UUID, String> settingLocation = new HashMap<>();
 
     public AbstractLocationBasedTriggerManager(TriggerReactor plugin, SelfReference ref, File tirggerFolder) {
@@ -86,21 +86,13 @@ public abstract class AbstractLocationBasedTriggerManager<T extends Trigger> ext
                 }
 
                 if(sloc != null && trigger != null){
-                    SimpleChunkLocation scloc = new SimpleChunkLocation(sloc);
-
-                    Map<SimpleLocation, T> triggerMap = locationTriggers.get(scloc);
-                    if(!locationTriggers.containsKey(scloc)){
-                        triggerMap = new ConcurrentHashMap<>();
-                        locationTriggers.put(scloc, triggerMap);
-                    }
-
-                    if (triggerMap.containsKey(sloc)) {
-                        Trigger previous = triggerMap.get(sloc);
+                    Trigger previous = locationTriggers.get(sloc);
+                    if (previous != null) {
                         plugin.getLogger().warning("Found a duplicating "+trigger.getClass().getSimpleName());
                         plugin.getLogger().warning("Existing: "+previous.file.getAbsolutePath());
                         plugin.getLogger().warning("Skipped: "+trigger.file.getAbsolutePath());
                     } else {
-                        triggerMap.put(sloc, trigger);
+                        locationTriggers.put(sloc, trigger);
                     }
                 }
             }
@@ -109,32 +101,27 @@ public abstract class AbstractLocationBasedTriggerManager<T extends Trigger> ext
 
     @Override
     public void saveAll(){
-        for(Entry<SimpleChunkLocation, Map<SimpleLocation, T>> chunkEntry : locationTriggers.entrySet()){
-            SimpleChunkLocation scloc = chunkEntry.getKey();
-            Map<SimpleLocation, T> slocMap = chunkEntry.getValue();
-
-            Set<SimpleLocation> failed = new HashSet<>();
+        Set<SimpleLocation> failed = new HashSet<>();
 
-            for(Entry<SimpleLocation, T> entry : slocMap.entrySet()){
-                SimpleLocation sloc = entry.getKey();
-                T trigger = entry.getValue();
+        for(Entry<SimpleLocation, T> entry : locationTriggers.entries()){
+            SimpleLocation sloc = entry.getKey();
+            T trigger = entry.getValue();
 
-                String fileName = slocToString(sloc);
-                String script = trigger.getScript();
+            String fileName = slocToString(sloc);
+            String script = trigger.getScript();
 
-                File file = new File(folder, fileName+".trg");
-                try{
-                    FileUtil.writeToFile(file, script);
-                }catch(Exception e){
-                    e.printStackTrace();
-                    plugin.getLogger().severe("Could not save a trigger at "+sloc);
-                    failed.add(sloc);
-                }
+            File file = new File(folder, fileName+".trg");
+            try{
+                FileUtil.writeToFile(file, script);
+            }catch(Exception e){
+                e.printStackTrace();
+                plugin.getLogger().severe("Could not save a trigger at "+sloc);
+                failed.add(sloc);
             }
+        }
 
-            for(SimpleLocation sloc : failed){
-                slocMap.remove(sloc);
-            }
+        for(SimpleLocation sloc : failed){
+            locationTriggers.remove(sloc);
         }
     }
 
@@ -161,42 +148,28 @@ public abstract class AbstractLocationBasedTriggerManager<T extends Trigger> ext
     protected abstract String getTriggerTypeName();
 
     protected T getTriggerForLocation(SimpleLocation sloc) {
-        SimpleChunkLocation scloc = new SimpleChunkLocation(sloc);
-
-        if(!locationTriggers.containsKey(scloc))
-            return null;
-
-        Map<SimpleLocation, T> triggerMap = locationTriggers.get(scloc);
-        if(!triggerMap.containsKey(sloc))
-            return null;
+        return locationTriggers.get(sloc);
+    }
 
-        T trigger = triggerMap.get(sloc);
-        return trigger;
+    /**
+     * Same as {@link #getTriggerForLocation(SimpleLocation)}, but doesn't need a SimpleLocation.
+     * This is called every time a player moves to another block, so it must not create any object.
+     * @return the trigger; null if there is no trigger at the location
+     */
+    protected T getTriggerForLocation(String world, int x, int y, int z) {
+        return locationTriggers.get(world, x, y, z);
     }
 
     protected void setTriggerForLocation(SimpleLocation sloc, T trigger) {
-        SimpleChunkLocation scloc = new SimpleChunkLocation(sloc);
-
-        Map<SimpleLocation, T> triggerMap = locationTriggers.get(scloc);
-        if(!locationTriggers.containsKey(scloc)){
-            triggerMap = new ConcurrentHashMap<>();
-            locationTriggers.put(scloc, triggerMap);
-        }
-
-        triggerMap.put(sloc, trigger);
+        locationTriggers.put(sloc, trigger);
 
         plugin.saveAsynchronously(this);
     }
 
     protected T removeTriggerForLocation(SimpleLocation sloc) {
-        SimpleChunkLocation scloc = new SimpleChunkLocation(sloc);
-
-        Map<SimpleLocation, T> triggerMap = locationTriggers.get(scloc);
-        if(!locationTriggers.containsKey(scloc)){
+        T result = locationTriggers.remove(sloc);
+        if(result == null)
             return null;
-        }
-
-        T result = triggerMap.remove(sloc);
 
         deleteInfo(result);
 
@@ -332,13 +305,8 @@ public abstract class AbstractLocationBasedTriggerManager<T extends Trigger> ext
 
     public Set<Map.Entry<SimpleLocation, Trigger>> getTriggersInChunk(SimpleChunkLocation scloc) {
         Set<Map.Entry<SimpleLocation, Trigger>> triggers = new HashSet<>();
-        if(!locationTriggers.containsKey(scloc))
-            return triggers;
-
-        for(Entry<SimpleChunkLocation, Map<SimpleLocation, T>> entry : locationTriggers.entrySet()){
-            for(Entry<SimpleLocation, T> entryIn : entry.getValue().entrySet()){
-                triggers.add(new SimpleEntry<SimpleLocation, Trigger>(entryIn.getKey(), entryIn.getValue()));
-            }
+        for(Entry<SimpleLocation, T> entry : locationTriggers.entriesInChunk(scloc)){
+            triggers.add(new SimpleEntry<SimpleLocation, Trigger>(entry.getKey(), entry.getValue()));
         }
 
         return triggers;
@@ -257,10 +257,8 @@ public abstract class AbstractRepeatingTriggerManager extends AbstractTriggerMan
             trigger.activate(new Object(), vars);
             trigger.setSync(false);
 
-            Thread thread = new Thread(trigger);
-            thread.setName("TRG Repeating Trigger -- " + triggerName);
-            thread.setPriority(Thread.MIN_PRIORITY + 1);
-            thread.start();
+            Thread thread = TriggerReactor.getInstance().getWorkerPool().startThread(trigger,
+                    "TRG Repeating Trigger -- " + triggerName);
 
             runningThreads.put(triggerName, thread);
         }
@@ -19,19 +19,29 @@ package io.github.wysohn.triggerreactor.core.manager.trigger;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.github.wysohn.triggerreactor.core.main.MainThreadQueue;
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
+import io.github.wysohn.triggerreactor.core.main.TriggerWorkerPool;
 import io.github.wysohn.triggerreactor.core.manager.Manager;
+import io.github.wysohn.triggerreactor.core.manager.trigger.share.api.AbstractAPISupport;
+import io.github.wysohn.triggerreactor.core.script.compiler.Compiler;
+import io.github.wysohn.triggerreactor.core.script.compiler.Program;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Executor;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Interpreter;
+import io.github.wysohn.triggerreactor.core.script.interpreter.Interpreter.WaitScheduler;
+import io.github.wysohn.triggerreactor.core.script.interpreter.InterpreterPool;
 import io.github.wysohn.triggerreactor.core.script.interpreter.Placeholder;
 import io.github.wysohn.triggerreactor.core.script.lexer.Lexer;
 import io.github.wysohn.triggerreactor.core.script.lexer.LexerException;
@@ -40,7 +50,7 @@ import io.github.wysohn.triggerreactor.core.script.parser.Parser;
 import io.github.wysohn.triggerreactor.core.script.parser.ParserException;
 import io.github.wysohn.triggerreactor.core.script.wrapper.SelfReference;
 import io.github.wysohn.triggerreactor.tools.FileUtil;
-import io.github.wysohn.triggerreactor.tools.ReflectionUtil;
+import io.github.wysohn.triggerreactor.tools.VariableExtractor;
 
 public abstract class AbstractTriggerManager extends Manager implements ConfigurationFileIO{
     private static SelfReference common;
@@ -104,15 +114,47 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
 
     public static abstract class Trigger implements Cloneable{
         protected final Map<UUID, Long> cooldowns = new ConcurrentHashMap<>();
+        //number of async activations running or waiting for a thread
+        protected final AtomicInteger running = new AtomicInteger();
+
+        //#WAIT doesn't hold the thread but comes back to the worker threads when the time is up
+        private final WaitScheduler waitScheduler = new WaitScheduler(){
+            @Override
+            public void resumeLater(Interpreter interpreter, long mills) {
+                TriggerWorkerPool workers = TriggerReactor.getInstance().getWorkerPool();
+                try{
+                    workers.schedule(new Runnable(){
+                        @Override
+                        public void run() {
+                            boolean accepted = workers.resume(new Runnable(){
+                                @Override
+                                public void run() {
+                                    resume(interpreter);
+                                }
+                            });
+
+                            if(!accepted)
+                                abandon(interpreter);
+                        }
+                    }, mills);
+                }catch(RejectedExecutionException ex){
+                    abandon(interpreter);
+                }
+            }
+        };
         protected final File file;
 
         protected String triggerName;
         protected String script;
 
         protected Node root;
+        protected Program program;
+        protected InterpreterPool interpreterPool;
         protected Map<String, Executor> executorMap;
         protected Map<String, Placeholder> placeholderMap;
         protected Map<String, Object> gvarMap;
+        //event fields this script reads, per event class
+        protected ClassValue<VariableExtractor> extractors;
 
         private boolean sync = false;
 
@@ -158,9 +200,12 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
                 Parser parser = new Parser(lexer);
 
                 root = parser.parse();
+                program = new Compiler(root).compile();
                 executorMap = TriggerReactor.getInstance().getExecutorManager().getBackedMap();
                 placeholderMap = TriggerReactor.getInstance().getPlaceholderManager().getBackedMap();
                 gvarMap = TriggerReactor.getInstance().getVariableManager().getGlobalVariableAdapter();
+                interpreterPool = new InterpreterPool(program, executorMap, placeholderMap, gvarMap, common);
+                extractors = createExtractors(program);
             } catch (Exception ex) {
                 throw new TriggerInitFailedException("Failed to initialize Trigger [" + this.getClass().getSimpleName()
                         + " -- " + triggerName + "]!", ex);
@@ -223,8 +268,7 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
             }
 
             scriptVars.put("event", e);
-            scriptVars.putAll(ReflectionUtil.extractVariablesWithEnumAsString(e));
-            scriptVars.putAll(TriggerReactor.getInstance().getSharedVars());
+            bindVariables(e, scriptVars);
 
             Interpreter interpreter = initInterpreter(scriptVars);
 
@@ -232,6 +276,57 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
             return true;
         }
 
+        /**
+         * Put the fields of the Event and the shared variables into scriptVars. If the script is compiled, only
+         * the variables the script actually uses are put, as the script can't read any other variable anyway.
+         * @param e the Event associated with this Trigger
+         * @param scriptVars the temporary local variables
+         */
+        protected void bindVariables(Object e, Map<String, Object> scriptVars) {
+            Map<String, AbstractAPISupport> sharedVars = TriggerReactor.getInstance().getSharedVars();
+
+            if(program == null || extractors == null){
+                VariableExtractor.of(e.getClass()).extract(e, scriptVars);
+                scriptVars.putAll(sharedVars);
+                return;
+            }
+
+            extractors.get(e.getClass()).extract(e, scriptVars);
+            for(String name : program.locals){
+                AbstractAPISupport value = sharedVars.get(name);
+                if(value != null)
+                    scriptVars.put(name, value);
+            }
+        }
+
+        /**
+         * Copy the variables this script can read out of vars. Use the copy as scriptVars when the Trigger has
+         * to run in another thread while the owner of vars keeps modifying it.
+         * @param vars the variables of the caller
+         * @return the snapshot
+         */
+        public Map<String, Object> snapshotVars(Map<String, Object> vars) {
+            if(program == null)
+                return new HashMap<>(vars);
+
+            Map<String, Object> snapshot = new HashMap<>();
+            for(String name : program.locals){
+                Object value = vars.get(name);
+                if(value != null)
+                    snapshot.put(name, value);
+            }
+            return snapshot;
+        }
+
+        private static ClassValue<VariableExtractor> createExtractors(final Program program) {
+            return new ClassValue<VariableExtractor>() {
+                @Override
+                protected VariableExtractor computeValue(Class<?> type) {
+                    return VariableExtractor.of(type).select(program.locals);
+                }
+            };
+        }
+
         /**
          *
          * @param e
@@ -258,8 +353,11 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
          * @return
          */
         protected Interpreter initInterpreter(Map<String, Object> scriptVars) {
-            Interpreter interpreter = new Interpreter(root, executorMap, placeholderMap, gvarMap, scriptVars, common);
+            Interpreter interpreter = interpreterPool.acquire(scriptVars);
             interpreter.setSync(isSync());
+            if(!isSync())
+                interpreter.setWaitScheduler(waitScheduler);
+            interpreter.setPlaceholderCache(TriggerReactor.getInstance().getPlaceholderCache());
 
             return interpreter;
         }
@@ -297,7 +395,7 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
                                 "Error occurred while processing Trigger [" + getTriggerName() + "]!", e1));
                     }
                 } else {
-                    Future<Void> future = TriggerReactor.getInstance().callSyncMethod(call);
+                    Future<Void> future = TriggerReactor.getInstance().callSyncMethod(call, MainThreadQueue.Lane.TRIGGER);
                     try {
                         future.get(3, TimeUnit.SECONDS);
                     } catch (InterruptedException | ExecutionException e1) {
@@ -310,12 +408,15 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
                     }
                 }
             }else{
-                new Thread(new Runnable() {
+                boolean accepted = TriggerReactor.getInstance().getWorkerPool().execute(new Runnable() {
                     @Override
                     public void run() {
                         start(e, scriptVars, interpreter, sync);
                     }
-                }).start();
+                }, running);
+
+                if(!accepted && interpreterPool != null)
+                    interpreterPool.release(interpreter);
             }
         }
 
@@ -327,14 +428,47 @@ public abstract class AbstractTriggerManager extends Manager implements Configur
          * @param sync
          */
         protected void start(Object e, Map<String, Object> scriptVars, Interpreter interpreter, boolean sync) {
+            boolean finished = true;
             try{
-                interpreter.startWithContextAndInterrupter(e, TriggerReactor.getInstance().createInterrupter(e, interpreter, cooldowns));
+                finished = interpreter.run(e, TriggerReactor.getInstance().createInterrupter(e, interpreter, cooldowns));
             }catch(Exception ex){
                 TriggerReactor.getInstance().handleException(e,
                         new Exception("Error occurred while processing Trigger [" + getTriggerName() + "]!", ex));
+            }finally{
+                //suspended by #WAIT. It will be given back when resume() is done
+                if(finished && interpreterPool != null)
+                    interpreterPool.release(interpreter);
+            }
+        }
+
+        /**
+         * Continue the interpretation suspended by #WAIT. This is called in one of the worker threads.
+         * @param interpreter the suspended Interpreter
+         */
+        protected void resume(Interpreter interpreter) {
+            boolean finished = true;
+            try{
+                finished = interpreter.resume();
+            }catch(Exception ex){
+                TriggerReactor.getInstance().handleException(interpreter.getContext(),
+                        new Exception("Error occurred while processing Trigger [" + getTriggerName() + "]!", ex));
+            }finally{
+                if(finished && interpreterPool != null)
+                    interpreterPool.release(interpreter);
             }
         }
 
+        /**
+         * Give back the Interpreter suspended by #WAIT which can't be resumed, as the worker threads are shut down.
+         * @param interpreter the suspended Interpreter
+         */
+        private void abandon(Interpreter interpreter) {
+            TriggerReactor.getInstance().getLogger().warning("Could not resume Trigger [" + getTriggerName()
+                    + "] after #WAIT. The worker threads are shut down.");
+            if(interpreterPool != null)
+                interpreterPool.release(interpreter);
+        }
+
         @Override
         public abstract Trigger clone();
     }
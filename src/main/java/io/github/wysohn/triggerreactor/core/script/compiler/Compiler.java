@@ -0,0 +1,477 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.compiler;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.wysohn.triggerreactor.core.script.Token;
+import io.github.wysohn.triggerreactor.core.script.Token.Type;
+import io.github.wysohn.triggerreactor.core.script.parser.Node;
+import io.github.wysohn.triggerreactor.tools.MethodCallSite;
+
+/**
+ * Lowers the tree made by Parser into a {@link Program}, so the Interpreter doesn't have to walk the tree
+ * and compare the Token values every time the trigger runs. The instructions are emitted in the same order
+ * the nodes used to be visited, and the jump targets are resolved here once. Literals and the expressions made
+ * of literals only are evaluated here as well, so they are pushed as ready-made constants.
+ * <p>
+ * Each local variable is also given a slot index here, so the Interpreter can keep the locals in an array
+ * and only has to look up the names once when the trigger starts. The deepest the operand stack can go is
+ * computed here too, so the Interpreter can allocate its stack once with the right size.
+ * @author wysohn
+ *
+ */
+public class Compiler {
+    private final Node root;
+    private final ConstantFolder folder = new ConstantFolder();
+    private final Map<String, Integer> slots = new LinkedHashMap<>();
+
+    private int[] code = new int[64];
+    private int[] operands = new int[64];
+    private Object[] constants = new Object[64];
+    private Node[] nodes = new Node[64];
+    private Node[] statements = new Node[64];
+    private int size = 0;
+
+    private int depth = 0;
+    private int maxDepth = 0;
+
+    private Node statement;
+
+    public Compiler(Node root) {
+        this.root = root;
+    }
+
+    public Program compile() {
+        for(Node child : root.getChildren()){
+            statement = child;
+            compileStatement(child);
+        }
+
+        return new Program(Arrays.copyOf(code, size),
+                Arrays.copyOf(operands, size),
+                Arrays.copyOf(constants, size),
+                Arrays.copyOf(nodes, size),
+                Arrays.copyOf(statements, size),
+                slots.keySet().toArray(new String[slots.size()]),
+                maxDepth);
+    }
+
+    private void compileStatement(Node node) {
+        compileNode(node);
+
+        //expression statements like 'player.sendMessage("hi")' leave their result
+        if(leavesValue(node))
+            emit(Opcode.POP, 0, null, node);
+    }
+
+    private boolean leavesValue(Node node) {
+        Token token = node.getToken();
+        if(token.type == Type.EXECUTOR)
+            return false;
+        if(token.type == Type.OPERATOR && "=".equals(token.value))
+            return false;
+        if(token.type == Type.ID
+                && ("IF".equals(token.value)
+                        || "ELSEIF".equals(token.value)
+                        || "WHILE".equals(token.value)
+                        || "FOR".equals(token.value)))
+            return false;
+        return true;
+    }
+
+    private void compileNode(Node node) {
+        Token constant = folder.fold(node);
+        if(constant != null){
+            emit(Opcode.PUSH, 0, constant, node);
+            return;
+        }
+
+        Token token = node.getToken();
+
+        switch(token.type){
+        case ID:
+            if("IF".equals(token.value) || "ELSEIF".equals(token.value)){
+                compileIf(node);
+            }else if("WHILE".equals(token.value)){
+                compileWhile(node);
+            }else if("FOR".equals(token.value)){
+                compileFor(node);
+            }else{
+                emit(Opcode.PUSH, 0, token, node);
+            }
+            break;
+        case BODY:
+            for(Node child : node.getChildren())
+                compileStatement(child);
+            emit(Opcode.VISIT, 0, null, node);
+            break;
+        case EXECUTOR:
+            compileChildren(node);
+            emit(Opcode.EXECUTOR, node.getChildren().size(), token.value, node);
+            break;
+        case PLACEHOLDER:
+            compileChildren(node);
+            emit(Opcode.PLACEHOLDER, node.getChildren().size(), token.value, node);
+            break;
+        case OPERATOR_A:
+            compileChildren(node);
+            switch((String) token.value){
+            case "+":
+                emit(Opcode.ADD, 0, null, node);
+                break;
+            case "-":
+                emit(Opcode.SUB, 0, null, node);
+                break;
+            case "*":
+                emit(Opcode.MUL, 0, null, node);
+                break;
+            case "/":
+                emit(Opcode.DIV, 0, null, node);
+                break;
+            case "%":
+                emit(Opcode.MOD, 0, null, node);
+                break;
+            default:
+                emitThrow("Cannot interpret the unknown operator " + token.value, node);
+                break;
+            }
+            break;
+        case UNARYMINUS:
+            compileChildren(node);
+            emit(Opcode.NEG, 0, null, node);
+            break;
+        case OPERATOR_L:
+            compileLogic(node);
+            break;
+        case OPERATOR:
+            if("=".equals(token.value)){
+                compileAssign(node);
+            }else if(".".equals(token.value)){
+                compileDot(node);
+            }else{
+                emitThrow("Cannot interpret the unknown operator " + token.value, node);
+            }
+            break;
+        case ARRAYACCESS:
+            //ARRAYACCESS children -- [0] : array variable , [1] : index ; or only [0] : index for id(args)[i]
+            if(node.getChildren().size() == 2 && node.getChildren().get(0).getToken().type == Type.ID){
+                emitLoad(node.getChildren().get(0));
+                compileNode(node.getChildren().get(1));
+            }else{
+                compileChildren(node);
+            }
+            emit(Opcode.ARRAY_ACCESS, 0, null, node);
+            break;
+        case GID:
+            compileChildren(node);
+            emit(Opcode.GVAR, 0, null, node);
+            break;
+        case THIS:
+            emit(Opcode.PUSH, 0, token, node);
+            break;
+        case CALL:
+            compileChildren(node);
+            emit(Opcode.PUSH, 0, token, node);
+            break;
+        case INTEGER:
+        case DECIMAL:
+        case BOOLEAN:
+            emit(Opcode.LITERAL, 0, token, node);
+            break;
+        case STRING:
+        case EPS:
+            emit(Opcode.PUSH, 0, new Token(token.type, token.value), node);
+            break;
+        case NULLVALUE:
+            emit(Opcode.PUSH, 0, new Token(token.type, null), node);
+            break;
+        default:
+            emitThrow("Cannot interpret the unknown node " + token.type.name(), node);
+            break;
+        }
+    }
+
+    private void compileChildren(Node node) {
+        for(Node child : node.getChildren())
+            compileNode(child);
+    }
+
+    //IF children -- [0] : condition , [1] : true body , [2] : false body(may not exist)
+    private void compileIf(Node node) {
+        compileNode(node.getChildren().get(0));
+        int branch = emit(Opcode.BRANCH_IF, -1, null, node);
+
+        compileNode(node.getChildren().get(1));
+        if(node.getChildren().size() > 2){
+            int jump = emit(Opcode.JUMP, -1, null, node);
+            operands[branch] = size;
+
+            compileNode(node.getChildren().get(2));
+            operands[jump] = size;
+        }else{
+            operands[branch] = size;
+        }
+
+        emit(Opcode.VISIT, 0, null, node);
+    }
+
+    //WHILE children -- [0] : condition , [1] : body
+    private void compileWhile(Node node) {
+        int start = size;
+        compileNode(node.getChildren().get(0));
+        int branch = emit(Opcode.BRANCH_WHILE, -1, null, node);
+
+        compileNode(node.getChildren().get(1));
+        emit(Opcode.JUMP, start, null, node);
+        operands[branch] = size;
+
+        emit(Opcode.VISIT, 0, null, node);
+    }
+
+    //FOR children -- [0] : iteration variable , [1] : iterator , [2] : body
+    private void compileFor(Node node) {
+        Node varNode = node.getChildren().get(0);
+        int slot = -1;
+        if(isLocal(varNode)){
+            slot = resolve(varNode.getChildren().get(1));
+        }else{
+            compileNode(varNode);
+        }
+
+        Node iterNode = node.getChildren().get(1);
+        if(iterNode.getToken().type != Type.ITERATOR){
+            emitThrow("Expected <ITERATOR> but found " + iterNode.getToken(), node);
+            return;
+        }
+
+        int loop;
+        if(iterNode.getChildren().size() == 1){
+            compileNode(iterNode.getChildren().get(0));
+            emit(Opcode.FOR_EACH_INIT, slot, null, node);
+            loop = emit(Opcode.FOR_EACH_NEXT, -1, null, node);
+        }else if(iterNode.getChildren().size() == 2){
+            Node initNode = iterNode.getChildren().get(0);
+            if(initNode.getToken().type != Type.INTEGER){
+                emitThrow("Init value must be an Integer value! -- " + initNode, node);
+                return;
+            }
+
+            compileNode(initNode);
+            compileNode(iterNode.getChildren().get(1));
+            emit(Opcode.FOR_RANGE_INIT, slot, null, node);
+            loop = emit(Opcode.FOR_RANGE_NEXT, -1, null, node);
+        }else{
+            emitThrow("Number of <ITERATOR> must be 1 or 2!", node);
+            return;
+        }
+
+        compileNode(node.getChildren().get(2));
+        emit(Opcode.JUMP, loop, null, node);
+        operands[loop] = size;
+
+        emit(Opcode.VISIT, 0, null, node);
+    }
+
+    //= children -- [0] : variable , [1] : value
+    private void compileAssign(Node node) {
+        Node left = node.getChildren().get(0);
+        if(isLocal(left)){
+            compileNode(node.getChildren().get(1));
+            emit(Opcode.STORE_LOCAL, resolve(left.getChildren().get(1)), null, node);
+        }else{
+            compileChildren(node);
+            emit(Opcode.ASSIGN, 0, null, node);
+        }
+    }
+
+    private void compileLogic(Node node) {
+        Token token = node.getToken();
+        if("&&".equals(token.value) || "||".equals(token.value)){
+            boolean and = "&&".equals(token.value);
+
+            compileNode(node.getChildren().get(0));
+            int shortCut = emit(and ? Opcode.SHORT_AND : Opcode.SHORT_OR, -1, null, node);
+
+            compileNode(node.getChildren().get(1));
+            emit(and ? Opcode.AND : Opcode.OR, 0, null, node);
+            operands[shortCut] = size;
+            return;
+        }
+
+        compileChildren(node);
+        switch((String) token.value){
+        case "!":
+            emit(Opcode.NOT, 0, null, node);
+            break;
+        case "<":
+            emit(Opcode.LT, 0, null, node);
+            break;
+        case ">":
+            emit(Opcode.GT, 0, null, node);
+            break;
+        case "<=":
+            emit(Opcode.LE, 0, null, node);
+            break;
+        case ">=":
+            emit(Opcode.GE, 0, null, node);
+            break;
+        case "==":
+            emit(Opcode.EQ, 0, null, node);
+            break;
+        case "!=":
+            emit(Opcode.NE, 0, null, node);
+            break;
+        default:
+            emitThrow("Cannot interpret the unknown operator " + token.value, node);
+            break;
+        }
+    }
+
+    //DOT children -- [0] : target , [1] : field or function call
+    private void compileDot(Node node) {
+        Node left = node.getChildren().get(0);
+        Node right = node.getChildren().get(1);
+
+        if(right.getToken().type == Type.CALL){
+            String name = (String) right.getToken().value;
+            int argc = right.getChildren().size();
+
+            if(left.getToken().type == Type.THIS){
+                compileChildren(right);
+                emit(Opcode.INVOKE_SELF, argc, new MethodCallSite(name), node);
+            }else{
+                compileNode(left);
+                compileChildren(right);
+                emit(Opcode.INVOKE, argc, new MethodCallSite(name), node);
+            }
+        }else{
+            if(left.getToken().type == Type.THIS){
+                //this.x is just x
+                if(right.getToken().type == Type.ID)
+                    emitLoad(right);
+                else
+                    compileNode(right);
+            }else{
+                compileNode(left);
+                compileNode(right);
+                emit(Opcode.ACCESS, 0, null, node);
+            }
+        }
+    }
+
+    /**
+     * Local variables are the ids right after 'this', which Parser puts in front of every id chain.
+     */
+    private boolean isLocal(Node node) {
+        return node.getToken().type == Type.OPERATOR
+                && ".".equals(node.getToken().value)
+                && node.getChildren().size() == 2
+                && node.getChildren().get(0).getToken().type == Type.THIS
+                && node.getChildren().get(1).getToken().type == Type.ID;
+    }
+
+    private int resolve(Node idNode) {
+        String name = (String) idNode.getToken().value;
+
+        Integer slot = slots.get(name);
+        if(slot == null){
+            slot = slots.size();
+            slots.put(name, slot);
+        }
+        return slot;
+    }
+
+    private void emitLoad(Node idNode) {
+        emit(Opcode.LOAD_LOCAL, resolve(idNode), idNode.getToken(), idNode);
+    }
+
+    private void emitThrow(String message, Node node) {
+        emit(Opcode.THROW, 0, message, node);
+    }
+
+    private int emit(int opcode, int operand, Object constant, Node node) {
+        if(size == code.length){
+            int newLength = size * 2;
+            code = Arrays.copyOf(code, newLength);
+            operands = Arrays.copyOf(operands, newLength);
+            constants = Arrays.copyOf(constants, newLength);
+            nodes = Arrays.copyOf(nodes, newLength);
+            statements = Arrays.copyOf(statements, newLength);
+        }
+
+        code[size] = opcode;
+        operands[size] = operand;
+        constants[size] = constant;
+        nodes[size] = node;
+        statements[size] = statement;
+
+        //statements leave the stack empty, so following the instructions in order is enough
+        depth = Math.max(0, depth + stackEffect(opcode, operand));
+        maxDepth = Math.max(maxDepth, depth);
+        return size++;
+    }
+
+    /**
+     * @return number of values pushed minus number of values popped by the instruction
+     */
+    private static int stackEffect(int opcode, int operand) {
+        switch(opcode){
+        case Opcode.PUSH:
+        case Opcode.LITERAL:
+        case Opcode.LOAD_LOCAL:
+            return 1;
+        case Opcode.BRANCH_IF:
+        case Opcode.BRANCH_WHILE:
+        case Opcode.POP:
+        case Opcode.STORE_LOCAL:
+        case Opcode.ADD:
+        case Opcode.SUB:
+        case Opcode.MUL:
+        case Opcode.DIV:
+        case Opcode.MOD:
+        case Opcode.LT:
+        case Opcode.GT:
+        case Opcode.LE:
+        case Opcode.GE:
+        case Opcode.EQ:
+        case Opcode.NE:
+        case Opcode.AND:
+        case Opcode.OR:
+        case Opcode.ACCESS:
+        case Opcode.ARRAY_ACCESS:
+            return -1;
+        case Opcode.ASSIGN:
+            return -2;
+        //the iteration variable is on the stack too if it's not a local variable
+        case Opcode.FOR_EACH_INIT:
+            return operand < 0 ? -2 : -1;
+        case Opcode.FOR_RANGE_INIT:
+            return operand < 0 ? -3 : -2;
+        case Opcode.EXECUTOR:
+        case Opcode.INVOKE:
+            return -operand;
+        case Opcode.PLACEHOLDER:
+        case Opcode.INVOKE_SELF:
+            return 1 - operand;
+        default:
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.compiler;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import io.github.wysohn.triggerreactor.core.script.Token;
+import io.github.wysohn.triggerreactor.core.script.Token.Type;
+import io.github.wysohn.triggerreactor.core.script.parser.Node;
+
+/**
+ * Evaluates the expressions which consist of literals only, like <b>60*20</b> or <b>"prefix" + "suffix"</b>,
+ * while compiling. The results follow the same rules as the Interpreter, and anything that would fail at runtime,
+ * such as division by zero, is left to the Interpreter so the error is reported the same way.
+ * @author wysohn
+ *
+ */
+class ConstantFolder {
+    private static final Token NOT_CONSTANT = new Token(Type.EPS, null);
+
+    private final Map<Node, Token> folded = new IdentityHashMap<>();
+    private final Map<Token, Token> pool = new HashMap<>();
+
+    /**
+     * @param node the node to evaluate
+     * @return the constant value of this node; null if it has to be evaluated at runtime.
+     */
+    Token fold(Node node) {
+        Token constant = folded.get(node);
+        if(constant == null){
+            constant = evaluate(node);
+            if(constant == null){
+                constant = NOT_CONSTANT;
+            }else{
+                //same constants share the same Token
+                Token pooled = pool.putIfAbsent(constant, constant);
+                if(pooled != null)
+                    constant = pooled;
+            }
+            folded.put(node, constant);
+        }
+
+        return constant == NOT_CONSTANT ? null : constant;
+    }
+
+    private Token evaluate(Node node) {
+        Token token = node.getToken();
+        switch(token.type){
+        case INTEGER:
+            try{
+                return new Token(Type.INTEGER, Integer.parseInt((String) token.value));
+            }catch(NumberFormatException e){
+                return null;
+            }
+        case DECIMAL:
+            try{
+                return new Token(Type.DECIMAL, Double.parseDouble((String) token.value));
+            }catch(NumberFormatException e){
+                return null;
+            }
+        case BOOLEAN:
+            return new Token(Type.BOOLEAN, Boolean.parseBoolean((String) token.value));
+        case STRING:
+            return new Token(Type.STRING, token.value);
+        case OPERATOR_A:
+            return arithmetic(node);
+        case UNARYMINUS:
+            return unaryMinus(node);
+        case OPERATOR_L:
+            return logic(node);
+        default:
+            return null;
+        }
+    }
+
+    private Token arithmetic(Node node) {
+        if(node.getChildren().size() != 2)
+            return null;
+
+        Token left = fold(node.getChildren().get(0));
+        Token right = fold(node.getChildren().get(1));
+        if(left == null || right == null)
+            return null;
+
+        String operator = (String) node.getToken().value;
+        if("+".equals(operator) && (left.type == Type.STRING || right.type == Type.STRING))
+            return new Token(Type.STRING, String.valueOf(left.value) + String.valueOf(right.value));
+
+        if(!left.isNumeric() || !right.isNumeric())
+            return null;
+
+        if(left.isInt() && right.isInt()){
+            int leftVal = left.toInt(), rightVal = right.toInt();
+            switch(operator){
+            case "+":
+                return new Token(Type.INTEGER, leftVal + rightVal);
+            case "-":
+                return new Token(Type.INTEGER, leftVal - rightVal);
+            case "*":
+                return new Token(Type.INTEGER, leftVal * rightVal);
+            case "/":
+                return rightVal == 0 ? null : new Token(Type.INTEGER, leftVal / rightVal);
+            case "%":
+                return rightVal == 0 ? null : new Token(Type.INTEGER, leftVal % rightVal);
+            default:
+                return null;
+            }
+        }else{
+            double leftVal = left.isInt() ? left.toInt() : left.toDouble();
+            double rightVal = right.isInt() ? right.toInt() : right.toDouble();
+            switch(operator){
+            case "+":
+                return new Token(Type.DECIMAL, leftVal + rightVal);
+            case "-":
+                return new Token(Type.DECIMAL, leftVal - rightVal);
+            case "*":
+                return new Token(Type.DECIMAL, leftVal * rightVal);
+            case "/":
+                return new Token(Type.DECIMAL, leftVal / rightVal);
+            case "%":
+                return new Token(Type.DECIMAL, leftVal % rightVal);
+            default:
+                return null;
+            }
+        }
+    }
+
+    private Token unaryMinus(Node node) {
+        if(node.getChildren().size() != 1)
+            return null;
+
+        Token value = fold(node.getChildren().get(0));
+        if(value == null || !value.isNumeric())
+            return null;
+
+        return value.isInt() ? new Token(Type.INTEGER, -value.toInt()) : new Token(Type.DECIMAL, -value.toDouble());
+    }
+
+    private Token logic(Node node) {
+        String operator = (String) node.getToken().value;
+
+        if("!".equals(operator)){
+            if(node.getChildren().size() != 1)
+                return null;
+
+            Token value = fold(node.getChildren().get(0));
+            if(value == null)
+                return null;
+
+            if(value.isBoolean())
+                return new Token(Type.BOOLEAN, !value.toBoolean());
+            else if(value.isDouble())
+                return new Token(Type.BOOLEAN, value.toDouble() == 0.0);
+            else if(value.isInt())
+                return new Token(Type.BOOLEAN, value.toInt() == 0);
+            else
+                return null;
+        }
+
+        if(node.getChildren().size() != 2)
+            return null;
+
+        Token left = fold(node.getChildren().get(0));
+        if(left == null)
+            return null;
+
+        //the right side is never evaluated if the left side decides the result
+        if("&&".equals(operator) && left.isBoolean() && !left.toBoolean())
+            return left;
+        if("||".equals(operator) && left.isBoolean() && left.toBoolean())
+            return left;
+
+        Token right = fold(node.getChildren().get(1));
+        if(right == null)
+            return null;
+
+        switch(operator){
+        case "<":
+        case ">":
+        case "<=":
+        case ">=":
+            if(!left.isNumeric() || !right.isNumeric())
+                return null;
+
+            double leftVal = left.isInt() ? left.toInt() : left.toDouble();
+            double rightVal = right.isInt() ? right.toInt() : right.toDouble();
+            if("<".equals(operator))
+                return new Token(Type.BOOLEAN, leftVal < rightVal);
+            else if(">".equals(operator))
+                return new Token(Type.BOOLEAN, leftVal > rightVal);
+            else if("<=".equals(operator))
+                return new Token(Type.BOOLEAN, leftVal <= rightVal);
+            else
+                return new Token(Type.BOOLEAN, leftVal >= rightVal);
+        case "==":
+            return new Token(Type.BOOLEAN, left.value.equals(right.value));
+        case "!=":
+            return new Token(Type.BOOLEAN, !left.value.equals(right.value));
+        case "&&":
+        case "||":
+            if(!left.isBoolean() || !right.isBoolean())
+                return null;
+            return right;
+        default:
+            return null;
+        }
+    }
+}
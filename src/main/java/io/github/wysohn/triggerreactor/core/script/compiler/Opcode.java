@@ -0,0 +1,107 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.compiler;
+
+/**
+ * Instruction set of the compiled {@link Program}. Opcodes below {@link #FIRST_NODE_OP} only move the program counter
+ * around or touch the local variable slots, so they are neither reported to the ProcessInterrupter nor wrapped with
+ * the Node that produced them.
+ * @author wysohn
+ *
+ */
+public final class Opcode {
+    //control flow
+    /**jump to operand**/
+    public static final int JUMP = 0;
+    /**pop a condition. Jump to operand if it is false by the rule of IF statement**/
+    public static final int BRANCH_IF = 1;
+    /**pop a condition. Jump to operand if it is false by the rule of WHILE statement**/
+    public static final int BRANCH_WHILE = 2;
+    /**peek left side of &&. Jump to operand, leaving the value, if it is false**/
+    public static final int SHORT_AND = 3;
+    /**peek left side of ||. Jump to operand, leaving the value, if it is true**/
+    public static final int SHORT_OR = 4;
+    /**pop iterable, then begin a new loop. Iteration variable is the operand slot, or popped if the operand is -1**/
+    public static final int FOR_EACH_INIT = 5;
+    /**assign next element of the loop or jump to operand if done**/
+    public static final int FOR_EACH_NEXT = 6;
+    /**pop limit and init, then begin a new loop. Iteration variable is same as FOR_EACH_INIT**/
+    public static final int FOR_RANGE_INIT = 7;
+    /**assign next number of the loop or jump to operand if done**/
+    public static final int FOR_RANGE_NEXT = 8;
+    /**discard the value left by an expression statement**/
+    public static final int POP = 9;
+    /**throw InterpreterException with the message in constant**/
+    public static final int THROW = 10;
+    /**push value of the local variable in operand slot**/
+    public static final int LOAD_LOCAL = 11;
+    /**pop value then save it to the local variable in operand slot**/
+    public static final int STORE_LOCAL = 12;
+
+    public static final int FIRST_NODE_OP = 13;
+
+    //node operations
+    /**only notify the interrupter; used for the blocks like BODY, IF, WHILE, and FOR**/
+    public static final int VISIT = 13;
+    /**push the Token in constant as is**/
+    public static final int PUSH = 14;
+    /**push the literal Token in constant after converting its lexeme. Only for the literals ConstantFolder couldn't convert**/
+    public static final int LITERAL = 15;
+    /**pop key then push global variable id**/
+    public static final int GVAR = 16;
+    /**run executor named constant with operand arguments**/
+    public static final int EXECUTOR = 17;
+    /**run placeholder named constant with operand arguments**/
+    public static final int PLACEHOLDER = 18;
+    public static final int ADD = 19;
+    public static final int SUB = 20;
+    public static final int MUL = 21;
+    public static final int DIV = 22;
+    public static final int MOD = 23;
+    public static final int NEG = 24;
+    public static final int NOT = 25;
+    public static final int LT = 26;
+    public static final int GT = 27;
+    public static final int LE = 28;
+    public static final int GE = 29;
+    public static final int EQ = 30;
+    public static final int NE = 31;
+    public static final int AND = 32;
+    public static final int OR = 33;
+    public static final int ASSIGN = 34;
+    /**pop field name and target then push the accessor**/
+    public static final int ACCESS = 35;
+    /**pop index and array then push the accessor**/
+    public static final int ARRAY_ACCESS = 36;
+    /**call method named constant of the target with operand arguments**/
+    public static final int INVOKE = 37;
+    /**call method named constant of the SelfReference with operand arguments**/
+    public static final int INVOKE_SELF = 38;
+
+    private static final String[] NAMES = { "JUMP", "BRANCH_IF", "BRANCH_WHILE", "SHORT_AND", "SHORT_OR",
+            "FOR_EACH_INIT", "FOR_EACH_NEXT", "FOR_RANGE_INIT", "FOR_RANGE_NEXT", "POP", "THROW", "LOAD_LOCAL", "STORE_LOCAL", "VISIT", "PUSH",
+            "LITERAL", "GVAR", "EXECUTOR", "PLACEHOLDER", "ADD", "SUB", "MUL", "DIV", "MOD", "NEG", "NOT", "LT", "GT",
+            "LE", "GE", "EQ", "NE", "AND", "OR", "ASSIGN", "ACCESS", "ARRAY_ACCESS", "INVOKE", "INVOKE_SELF" };
+
+    private Opcode() {
+
+    }
+
+    public static String nameOf(int opcode) {
+        return opcode >= 0 && opcode < NAMES.length ? NAMES[opcode] : "UNKNOWN(" + opcode + ")";
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.wysohn.triggerreactor.core.script.parser.Node;
+
+/**
+ * Flat instruction array produced by {@link Compiler}. Each instruction is stored across the parallel arrays
+ * by its index, so the Interpreter can run it with a single program counter. The arrays must not be modified
+ * as the same Program is shared by every execution of a trigger.
+ * @author wysohn
+ *
+ */
+public final class Program {
+    /**opcodes. See {@link Opcode}**/
+    public final int[] code;
+    /**jump target, number of arguments, or slot of local variable**/
+    public final int[] operands;
+    /**Token, name, message, or MethodCallSite the instruction works on**/
+    public final Object[] constants;
+    /**the Node which the instruction is made from**/
+    public final Node[] nodes;
+    /**the top level statement which the instruction belongs to**/
+    public final Node[] statements;
+    /**name of the local variable for each slot**/
+    public final String[] locals;
+    /**the deepest the operand stack can go while running**/
+    public final int maxStack;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    Program(int[] code, int[] operands, Object[] constants, Node[] nodes, Node[] statements, String[] locals, int maxStack) {
+        this.code = code;
+        this.operands = operands;
+        this.constants = constants;
+        this.nodes = nodes;
+        this.statements = statements;
+        this.locals = locals;
+        this.maxStack = maxStack;
+
+        for(int i = 0; i < locals.length; i++)
+            slots.put(locals[i], i);
+    }
+
+    /**
+     * @param name name of the local variable
+     * @return the slot index of the variable; -1 if the script never uses it.
+     */
+    public int slotOf(Object name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public int size() {
+        return code.length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < code.length; i++){
+            builder.append(i).append(": ").append(Opcode.nameOf(code[i])).append(' ').append(operands[i]);
+            if(constants[i] != null)
+                builder.append(' ').append(constants[i]);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How long the value of a Placeholder can be reused. Javascript Placeholders declare it with a comment line
+ * in the file:
+ * <pre>
+ * // @cache none        -- run every time (default)
+ * // @cache activation  -- reuse within the same execution of a Trigger
+ * // @cache 1000        -- reuse for 1000 milliseconds
+ * // @cache 1000 global -- reuse for 1000 milliseconds, shared by every player
+ * </pre>
+ * The cached values are looked up by the name of the Placeholder, the player of the context, and the arguments.
+ * The player is left out of the lookup if the policy is global, so use it only if the value doesn't depend on
+ * who the context is.
+ * @author wysohn
+ *
+ */
+public final class CachePolicy {
+    public static final CachePolicy NONE = new CachePolicy(-1L, false);
+    public static final CachePolicy PER_ACTIVATION = new CachePolicy(0L, false);
+
+    private static final Pattern HEADER = Pattern.compile("^\\s*//\\s*@cache\\s+(\\w+)(?:[ \\t]+(\\w+))?",
+            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+
+    private final long ttl;
+    private final boolean global;
+
+    private CachePolicy(long ttl, boolean global) {
+        this.ttl = ttl;
+        this.global = global;
+    }
+
+    /**
+     * @param mills how long the value can be reused, in milliseconds
+     * @return the policy
+     */
+    public static CachePolicy ttl(long mills) {
+        if(mills <= 0)
+            throw new IllegalArgumentException("TTL must be positive but was "+mills);
+
+        return new CachePolicy(mills, false);
+    }
+
+    /**
+     * Same as {@link #ttl(long)}, but the value is shared by every player.
+     * @param mills how long the value can be reused, in milliseconds
+     * @return the policy
+     */
+    public static CachePolicy ttlGlobal(long mills) {
+        if(mills <= 0)
+            throw new IllegalArgumentException("TTL must be positive but was "+mills);
+
+        return new CachePolicy(mills, true);
+    }
+
+    /**
+     * Find the policy declared in the script.
+     * @param sourceCode the source code of the script
+     * @return the policy; {@link #NONE} if not declared or not valid.
+     */
+    public static CachePolicy fromSource(String sourceCode) {
+        Matcher matcher = HEADER.matcher(sourceCode);
+        if(!matcher.find())
+            return NONE;
+
+        String value = matcher.group(1);
+        if(value.equalsIgnoreCase("activation"))
+            return PER_ACTIVATION;
+
+        try{
+            long mills = Long.parseLong(value);
+            if(mills <= 0)
+                return NONE;
+
+            return "global".equalsIgnoreCase(matcher.group(2)) ? ttlGlobal(mills) : ttl(mills);
+        }catch(NumberFormatException e){
+            return NONE;
+        }
+    }
+
+    public boolean isNone() {
+        return ttl < 0;
+    }
+
+    public boolean isPerActivation() {
+        return ttl == 0;
+    }
+
+    /**
+     * @return milliseconds the value can be reused. Only meaningful if neither {@link #isNone()} nor
+     *  {@link #isPerActivation()}.
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @return true if the value is shared by every player instead of being cached for each of them.
+     */
+    public boolean isGlobal() {
+        return global;
+    }
+
+    @Override
+    public String toString() {
+        if(isNone())
+            return "none";
+        else if(isPerActivation())
+            return "activation";
+        else
+            return global ? ttl+"ms global" : ttl+"ms";
+    }
+}
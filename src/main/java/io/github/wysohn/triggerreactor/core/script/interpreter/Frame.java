@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.Arrays;
+
+/**
+ * Local variable slots of the Interpreter. Like {@link ValueStack}, int, double, and boolean values are kept
+ * unboxed so loop counters and arithmetic results can be saved without creating objects. The values are boxed
+ * only when someone reads them as Object.
+ * @author wysohn
+ *
+ */
+final class Frame {
+    private final byte[] tags;
+    private final long[] longs;
+    private final double[] doubles;
+    private final Object[] values;
+    private final boolean[] dirty;
+
+    Frame(int size) {
+        tags = new byte[size];
+        longs = new long[size];
+        doubles = new double[size];
+        values = new Object[size];
+        dirty = new boolean[size];
+    }
+
+    int size() {
+        return tags.length;
+    }
+
+    /**
+     * @return one of the tags in {@link ValueStack}
+     */
+    byte tag(int slot) {
+        return tags[slot];
+    }
+
+    int getInt(int slot) {
+        return (int) longs[slot];
+    }
+
+    double getDouble(int slot) {
+        return doubles[slot];
+    }
+
+    boolean getBoolean(int slot) {
+        return longs[slot] != 0L;
+    }
+
+    /**
+     * @return the value of the slot. Primitive values are boxed.
+     */
+    Object get(int slot) {
+        switch(tags[slot]){
+        case ValueStack.INT:
+            return (int) longs[slot];
+        case ValueStack.DOUBLE:
+            return doubles[slot];
+        case ValueStack.BOOLEAN:
+            return longs[slot] != 0L;
+        default:
+            return values[slot];
+        }
+    }
+
+    /**
+     * Set the initial value. The slot is not marked as modified.
+     */
+    void init(int slot, Object value) {
+        tags[slot] = ValueStack.REF;
+        values[slot] = value;
+    }
+
+    void set(int slot, Object value) {
+        tags[slot] = ValueStack.REF;
+        values[slot] = value;
+        dirty[slot] = true;
+    }
+
+    void setInt(int slot, int value) {
+        tags[slot] = ValueStack.INT;
+        longs[slot] = value;
+        values[slot] = null;
+        dirty[slot] = true;
+    }
+
+    void setDouble(int slot, double value) {
+        tags[slot] = ValueStack.DOUBLE;
+        doubles[slot] = value;
+        values[slot] = null;
+        dirty[slot] = true;
+    }
+
+    void setBoolean(int slot, boolean value) {
+        tags[slot] = ValueStack.BOOLEAN;
+        longs[slot] = value ? 1L : 0L;
+        values[slot] = null;
+        dirty[slot] = true;
+    }
+
+    boolean isDirty(int slot) {
+        return dirty[slot];
+    }
+
+    void clean(int slot) {
+        dirty[slot] = false;
+    }
+
+    void clear() {
+        Arrays.fill(tags, ValueStack.REF);
+        Arrays.fill(values, null);
+        Arrays.fill(dirty, false);
+    }
+}
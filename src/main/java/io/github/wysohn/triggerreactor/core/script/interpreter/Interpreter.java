@@ -17,28 +17,48 @@
 package io.github.wysohn.triggerreactor.core.script.interpreter;
 
 import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Stack;
+import java.util.Set;
 
 import io.github.wysohn.triggerreactor.core.script.Token;
 import io.github.wysohn.triggerreactor.core.script.Token.Type;
+import io.github.wysohn.triggerreactor.core.script.compiler.Compiler;
+import io.github.wysohn.triggerreactor.core.script.compiler.Opcode;
+import io.github.wysohn.triggerreactor.core.script.compiler.Program;
 import io.github.wysohn.triggerreactor.core.script.parser.Node;
 import io.github.wysohn.triggerreactor.core.script.wrapper.Accessor;
 import io.github.wysohn.triggerreactor.core.script.wrapper.IScriptObject;
 import io.github.wysohn.triggerreactor.core.script.wrapper.SelfReference;
-import io.github.wysohn.triggerreactor.tools.ReflectionUtil;
+import io.github.wysohn.triggerreactor.tools.MethodCallSite;
 
 public class Interpreter {
-    private Node root;
-    private final Map<String, Executor> executorMap = new HashMap<>();
-    private final Map<String, Placeholder> placeholderMap = new HashMap<>();
+    private final Program program;
+    //shared with the other Interpreters, so never modify these
+    private final Map<String, Executor> executorMap;
+    private final Map<String, Placeholder> placeholderMap;
     private final Map<String, Object> gvars;
-    private final Map<String, Object> vars;
+    private Map<String, Object> vars;
+    private final Map<String, Object> varsView = new LocalVariables();
     private final SelfReference selfReference;
 
-    private Stack<Token> stack = new Stack<>();
+    //local variables while running. null if not running
+    private Frame frame = null;
+    //kept for the next run, as the same Program always needs the same number of slots
+    private Frame spareFrame = null;
+
+    private static final Token NULL = new Token(Type.NULLVALUE, null);
+
+    //operand stack while running. Borrowed from the pool if there is one
+    private ValueStack stack = null;
+    private ValueStackPool stackPool = null;
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    private int pc = 0;
 
     private Object context = null;
     private ProcessInterrupter interrupter = null;
@@ -48,7 +68,16 @@ public class Interpreter {
     private boolean waitFlag = false;
     private long cooldownEnd = -1;
 
-    private int callArgsSize = 0;
+    private WaitScheduler waitScheduler = null;
+    //delay of the #WAIT which suspended this Interpreter. -1 if not suspended
+    private long waitMills = -1;
+    private boolean suspended = false;
+
+    //values of the Placeholders with the TTL policy. null to not cache them
+    private PlaceholderCache placeholderCache = null;
+    //values of the Placeholders with the per activation policy. Created when first needed
+    private Map<PlaceholderCache.Key, Object> activationCache = null;
+
 /*    public Interpreter(Node root, Map<String, Executor> executorMap, Map<String, Object> gvars,
             SelfReference selfReference, InterpretCondition condition) {
         this.root = root;
@@ -64,22 +93,100 @@ public class Interpreter {
 */
     public Interpreter(Node root, Map<String, Executor> executorMap, Map<String, Placeholder> placeholderMap, Map<String, Object> gvars, Map<String, Object> localVars,
             SelfReference selfReference) {
-        this.root = root;
-        for(Entry<String, Executor> entry : executorMap.entrySet())
-            this.executorMap.put(entry.getKey(), entry.getValue());
-        for(Entry<String, Placeholder> entry : placeholderMap.entrySet())
-            this.placeholderMap.put(entry.getKey(), entry.getValue());
+        this(new Compiler(root).compile(), executorMap, placeholderMap, gvars, localVars, selfReference);
+    }
+
+    /**
+     * Use this constructor when the same script is executed many times. Compile the Node once with {@link Compiler}
+     * and share the Program between the Interpreters. The executor and placeholder maps are not copied but
+     * used as they are, so the same maps can be shared as well. Or use {@link InterpreterPool} which
+     * also reuses the Interpreters.
+     */
+    public Interpreter(Program program, Map<String, Executor> executorMap, Map<String, Placeholder> placeholderMap, Map<String, Object> gvars, Map<String, Object> localVars,
+            SelfReference selfReference) {
+        this.program = program;
+        this.executorMap = executorMap;
+        this.placeholderMap = placeholderMap;
         this.gvars = gvars;
         this.vars = localVars;
         this.selfReference = selfReference;
+    }
 
-        initDefaultExecutors();
+    /**
+     * Make this Interpreter ready to run again with the new local variables.
+     */
+    void reset(Map<String, Object> localVars) {
+        this.vars = localVars;
+        this.context = null;
+        this.interrupter = null;
+        this.pc = 0;
+        this.loops.clear();
+
+        this.stopFlag = false;
+        this.waitFlag = false;
+        this.cooldownEnd = -1;
+
+        this.waitScheduler = null;
+        this.waitMills = -1;
+        this.suspended = false;
+
+        this.placeholderCache = null;
+        if(this.activationCache != null)
+            this.activationCache.clear();
     }
 
-    private void initDefaultExecutors() {
-        executorMap.put("STOP", EXECUTOR_STOP);
-        executorMap.put("WAIT", EXECUTOR_WAIT);
-        executorMap.put("COOLDOWN", EXECUTOR_COOLDOWN);
+    Program getProgram() {
+        return program;
+    }
+
+    private Object parsePlaceholder(String name, Placeholder placeholder, Object[] args) throws Exception {
+        CachePolicy policy = placeholder.getCachePolicy();
+        if(policy == null || policy.isNone())
+            return placeholder.parse(context, args);
+
+        if(policy.isPerActivation()){
+            if(activationCache == null)
+                activationCache = new HashMap<>();
+
+            PlaceholderCache.Key key = new PlaceholderCache.Key(name, null, args);
+            if(activationCache.containsKey(key)){
+                if(placeholderCache != null)
+                    placeholderCache.recordHit();
+                return activationCache.get(key);
+            }
+            if(placeholderCache != null)
+                placeholderCache.recordMiss();
+
+            Object value = placeholder.parse(context, args);
+            activationCache.put(key, value);
+            return value;
+        }
+
+        if(placeholderCache == null)
+            return placeholder.parse(context, args);
+
+        PlaceholderCache.Key key = placeholderCache.createKey(name, policy.isGlobal() ? null : context, args);
+        Object value = placeholderCache.get(key);
+        if(value != PlaceholderCache.MISS)
+            return value;
+
+        value = placeholder.parse(context, args);
+        placeholderCache.put(key, value, policy.getTtl());
+        return value;
+    }
+
+    //default executors can't be overridden
+    private Executor getDefaultExecutor(String command) {
+        switch(command){
+        case "STOP":
+            return EXECUTOR_STOP;
+        case "WAIT":
+            return EXECUTOR_WAIT;
+        case "COOLDOWN":
+            return EXECUTOR_COOLDOWN;
+        default:
+            return null;
+        }
     }
 
     public boolean isStopFlag() {
@@ -90,6 +197,17 @@ public class Interpreter {
         return waitFlag;
     }
 
+    /**
+     * @return true if #WAIT suspended the interpretation and the WaitScheduler will resume it later.
+     */
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public Object getContext() {
+        return context;
+    }
+
     public boolean isCooldown() {
         return cooldownEnd != -1;
     }
@@ -106,12 +224,43 @@ public class Interpreter {
         this.sync = sync;
     }
 
+    /**
+     * Borrow the operand stack from the given pool instead of allocating a new one. Share the pool
+     * between the Interpreters made from the same Program.
+     * @param stackPool the pool; null to use its own stack.
+     */
+    public void setStackPool(ValueStackPool stackPool) {
+        this.stackPool = stackPool;
+    }
+
+    /**
+     * Let #WAIT suspend the interpretation instead of blocking the thread. The program counter and
+     * the local variables are kept in this Interpreter, and the scheduler has to call {@link #resume()}
+     * when the time is up.
+     * @param waitScheduler the scheduler; null to block the thread while waiting.
+     */
+    public void setWaitScheduler(WaitScheduler waitScheduler) {
+        this.waitScheduler = waitScheduler;
+    }
+
+    /**
+     * Reuse the values of the Placeholders which have the TTL {@link CachePolicy}. The values of the
+     * Placeholders with {@link CachePolicy#PER_ACTIVATION} are kept in this Interpreter regardless, until
+     * the next interpretation starts.
+     * @param placeholderCache the cache shared by the Interpreters; null to not cache the TTL values.
+     */
+    public void setPlaceholderCache(PlaceholderCache placeholderCache) {
+        this.placeholderCache = placeholderCache;
+    }
+
     /**
      * Map of local variables. Fill this map with necessary pairs depends on the context.
+     * While running, the map reads and writes the local variable slots directly, and the
+     * slots are written back to the map given to the constructor when the interpretation ends.
      * @return
      */
     public Map<String, Object> getVars() {
-        return vars;
+        return varsView;
     }
 
     /**
@@ -124,296 +273,404 @@ public class Interpreter {
     }
 
     /**
-     * Start interpretation.
+     * Start interpretation. Use {@link #run(Object, ProcessInterrupter)} instead to know if #WAIT suspended it.
      * @param context The context that can be used by Executors. This is usually Event object for Bukkit plugin.
      * @param interupter gives the caller to interrupt the execution
      * @throws InterpreterException
      */
     public void startWithContextAndInterrupter(Object context, ProcessInterrupter interrupter) throws InterpreterException{
+        run(context, interrupter);
+    }
+
+    /**
+     * Start interpretation.
+     * @param context The context that can be used by Executors. This is usually Event object for Bukkit plugin.
+     * @param interrupter gives the caller to interrupt the execution
+     * @return true if the interpretation is over; false if #WAIT suspended it. See {@link #setWaitScheduler(WaitScheduler)}
+     * @throws InterpreterException
+     */
+    public boolean run(Object context, ProcessInterrupter interrupter) throws InterpreterException{
         this.context = context;
         this.interrupter = interrupter;
+        this.pc = 0;
+        if(this.activationCache != null)
+            this.activationCache.clear();
+
+        bindFrame();
+        acquireStack();
+        return execute();
+    }
 
-        Node child = null;
+    /**
+     * Continue the interpretation suspended by #WAIT. Usually called by the {@link WaitScheduler}.
+     * @return true if the interpretation is over; false if another #WAIT suspended it again.
+     * @throws InterpreterException
+     */
+    public boolean resume() throws InterpreterException{
+        if(!suspended)
+            throw new IllegalStateException("Interpreter is not suspended!");
+
+        suspended = false;
+        waitFlag = false;
+        return execute();
+    }
+
+    private boolean execute() throws InterpreterException{
         try {
-            for(int i = 0; i < root.getChildren().size(); i++)
-                start(child = root.getChildren().get(i));
+            run();
         }catch(InterpreterException e) {
-            throw new InterpreterException("While interpreting "+child, e);
+            suspended = false;
+            throw new InterpreterException("While interpreting "+program.statements[pc], e);
+        }finally {
+            if(!suspended){
+                releaseStack();
+                releaseFrame();
+            }
         }
+
+        if(!suspended)
+            return true;
+
+        //the scheduler may resume it in another thread right away, so this has to be the last thing to do
+        long delay = waitMills;
+        waitMills = -1;
+        waitScheduler.resumeLater(this, delay);
+        return false;
     }
 
-    //Check if stopFlag is on before pop Token from stack.
-    private void start(Node node) throws InterpreterException{
-        if(stopFlag)
-            return;
+    private void acquireStack() {
+        if(stackPool != null)
+            stack = stackPool.acquire();
+        else if(stack == null)
+            stack = new ValueStack(program.maxStack);
+    }
 
-        //IF children -- [0] : condition , [1] : true body , [2] : false body(may not exist)
-        if ("ELSEIF".equals(node.getToken().value) || "IF".equals(node.getToken().value)) {
-            start(node.getChildren().get(0));//[0] condition
-            if(stopFlag)
-                return;
+    private void releaseStack() {
+        if(stackPool != null){
+            stackPool.release(stack);
+            stack = null;
+        }else{
+            stack.clear();
+        }
+    }
 
-            Token resultToken = stack.pop();
+    //variables from the event and shared variables are found by name only once here
+    private void bindFrame() {
+        if(spareFrame == null || spareFrame.size() != program.locals.length)
+            spareFrame = new Frame(program.locals.length);
 
-            if(isVariable(resultToken)){
-                resultToken = unwrapVariable(resultToken);
-            }
+        frame = spareFrame;
+        for(int i = 0; i < frame.size(); i++)
+            frame.init(i, vars.get(program.locals[i]));
+    }
+
+    private void flushFrame() {
+        for(int i = 0; i < frame.size(); i++){
+            if(!frame.isDirty(i))
+                continue;
+
+            Object value = frame.get(i);
+            if(value == null)
+                vars.remove(program.locals[i]);
+            else
+                vars.put(program.locals[i], value);
+            frame.clean(i);
+        }
+    }
+
+    private void releaseFrame() {
+        flushFrame();
+        frame.clear();
+        frame = null;
+    }
 
-            if(resultToken.type == Type.NULLVALUE){ // null check failed
-                if(node.getChildren().size() > 2){
-                    start(node.getChildren().get(2));
+    //Check if stopFlag is on before running the next instruction.
+    private void run() throws InterpreterException{
+        final int[] code = program.code;
+        final int[] operands = program.operands;
+
+        while(!stopFlag && pc < code.length){
+            int op = code[pc];
+            switch(op){
+            case Opcode.JUMP:
+                pc = operands[pc];
+                continue;
+            case Opcode.BRANCH_IF:
+                if(!testIf()){
+                    pc = operands[pc];
+                    continue;
                 }
-            }else{ // normal IF statement
-                if(resultToken.isBoolean()){
-                    boolean result = (boolean) resultToken.value;
-                    if (result) {
-                        start(node.getChildren().get(1));//[1] true body
-                    } else if (node.getChildren().size() > 2) {
-                        start(node.getChildren().get(2));//[2] false body
-                    }
-                }else if(resultToken.isInt()){
-                    int value = resultToken.toInt();
-                    if(value != 0){
-                        start(node.getChildren().get(1));
-                    } else if (node.getChildren().size() > 2) {
-                        start(node.getChildren().get(2));
-                    }
-                }else if(resultToken.isDouble()){
-                    double value = resultToken.toDouble();
-                    if(value != 0.0){
-                        start(node.getChildren().get(1));
-                    } else if (node.getChildren().size() > 2) {
-                        start(node.getChildren().get(2));
-                    }
-                }else if(resultToken.value != null){//always true if not null
-                    start(node.getChildren().get(1));
+                break;
+            case Opcode.BRANCH_WHILE:{
+                boolean result;
+                if(stack.tag() == ValueStack.BOOLEAN){
+                    result = stack.popBoolean();
                 }else{
-                    throw new InterpreterException("Unexpected token for IF statement! -- " + resultToken);
+                    Token resultToken = unwrap(stack.pop());
+                    if (!(resultToken.value instanceof Boolean))
+                        throw new InterpreterException("Unexpected token for WHILE statement! -- " + resultToken);
+                    result = (boolean) resultToken.value;
                 }
-            }
-        } else if ("WHILE".equals(node.getToken().value)) {
-            Token resultToken = null;
-            do {
-                start(node.getChildren().get(0));
 
-                resultToken = stack.pop();
-                if(resultToken == null)
-                    throw new InterpreterException("Could not find conditon for WHILE statement!");
-
-                if (isVariable(resultToken)) {
-                    resultToken = unwrapVariable(resultToken);
+                if(!result){
+                    pc = operands[pc];
+                    continue;
                 }
+                break;
+            }
+            case Opcode.SHORT_AND:
+            case Opcode.SHORT_OR:{
+                boolean result;
+                if(stack.tag() == ValueStack.BOOLEAN){
+                    result = stack.peekBoolean();
+                }else{
+                    String operator = op == Opcode.SHORT_AND ? "&&" : "||";
+                    Token leftBool = unwrap(stack.pop());
+                    stack.pushToken(leftBool);
 
-                if (!(resultToken.value instanceof Boolean))
-                    throw new InterpreterException("Unexpected token for WHILE statement! -- " + resultToken);
-
-                if ((boolean) resultToken.value) {
-                    start(node.getChildren().get(1));
-                } else {
-                    break;
+                    if(!leftBool.isBoolean())
+                        throw new InterpreterException("Left of "+operator+" operator should be Boolean but was "+leftBool);
+                    result = leftBool.toBoolean();
                 }
-            } while (!stopFlag);
-        } else if("FOR".equals(node.getToken().value)){
-            start(node.getChildren().get(0));
-
-            if(stopFlag)
-                return;
-            Token idToken = stack.pop();
-
-            if(idToken == null)
-                throw new InterpreterException("Iteration variable for FOR statement not found!");
-
-            if (node.getChildren().get(1).getToken().type != Type.ITERATOR)
-                throw new InterpreterException("Expected <ITERATOR> but found " + node.getChildren().get(1).getToken());
-            Node iterNode = node.getChildren().get(1);
 
-            if(iterNode.getChildren().size() == 1){
-                start(iterNode.getChildren().get(0));
-
-                if(stopFlag)
-                    return;
-                Token valueToken = stack.pop();
-
-                if(isVariable(valueToken)){
-                    valueToken = unwrapVariable(valueToken);
+                //false anyway for &&, true anyway for ||
+                if(result == (op == Opcode.SHORT_OR)){
+                    pc = operands[pc];
+                    continue;
                 }
+                break;
+            }
+            case Opcode.LOAD_LOCAL:
+                loadLocal(operands[pc]);
+                break;
+            case Opcode.STORE_LOCAL:
+                storeLocal(operands[pc]);
+                break;
+            case Opcode.FOR_EACH_INIT:{
+                Token valueToken = unwrap(stack.pop());
+                Token idToken = operands[pc] < 0 ? stack.pop() : null;
 
                 if(!valueToken.isIterable())
                     throw new InterpreterException(valueToken+" is not iterable!");
 
-                if (valueToken.isArray()) {
-                    for (int i = 0; i < Array.getLength(valueToken.value); i++) {
-                        Object obj = Array.get(valueToken.value, i);
-                        if (stopFlag)
-                            break;
-
-                        assignValue(idToken, parseValue(obj));
-                        start(node.getChildren().get(2));
-                    }
-                } else {
-                    for (Object obj : (Iterable<?>) valueToken.value) {
-                        if (stopFlag)
-                            break;
-
-                        assignValue(idToken, parseValue(obj));
-                        start(node.getChildren().get(2));
-                    }
+                Loop loop = new Loop(idToken, operands[pc]);
+                if(valueToken.isArray())
+                    loop.array = valueToken.value;
+                else
+                    loop.iterator = ((Iterable<?>) valueToken.value).iterator();
+                loops.push(loop);
+                break;
+            }
+            case Opcode.FOR_EACH_NEXT:{
+                Loop loop = loops.peek();
+                if(loop.array != null ? loop.index < Array.getLength(loop.array) : loop.iterator.hasNext()){
+                    Object obj = loop.array != null ? Array.get(loop.array, loop.index++) : loop.iterator.next();
+                    if(loop.slot < 0)
+                        assignValue(loop.id, parseValue(obj));
+                    else
+                        frame.set(loop.slot, obj instanceof IScriptObject ? ((IScriptObject) obj).get() : obj);
+                }else{
+                    loops.pop();
+                    pc = operands[pc];
+                    continue;
                 }
-            }else if(iterNode.getChildren().size() == 2){
-                Node initNode = iterNode.getChildren().get(0);
-                if(initNode.getToken().type != Type.INTEGER)
-                    throw new InterpreterException("Init value must be an Integer value! -- "+initNode);
-                start(initNode);
-
-                if(stopFlag)
-                    return;
-                Token initToken = stack.pop();
-
-                Node limitNode = iterNode.getChildren().get(1);
-                start(limitNode);
-
-                if(stopFlag)
-                    return;
-                Token limitToken = stack.pop();
-
-                if(isVariable(limitToken)){
-                    limitToken = unwrapVariable(limitToken);
+                break;
+            }
+            case Opcode.FOR_RANGE_INIT:{
+                int limit;
+                if(stack.tag() == ValueStack.INT){
+                    limit = stack.popInt();
+                }else{
+                    Token limitToken = unwrap(stack.pop());
+                    if(limitToken.type != Type.INTEGER)
+                        throw new InterpreterException("Limit value must be an Integer value! -- "+limitToken);
+                    limit = limitToken.toInt();
                 }
+                int init = stack.tag() == ValueStack.INT ? stack.popInt() : stack.pop().toInt();
+                Token idToken = operands[pc] < 0 ? stack.pop() : null;
 
-                if(limitToken.type != Type.INTEGER)
-                    throw new InterpreterException("Limit value must be an Integer value! -- "+limitToken);
-
-                for(int i = initToken.toInt(); !stopFlag && i < limitToken.toInt(); i++){
-                    assignValue(idToken, new Token(Type.INTEGER, i));
-                    start(node.getChildren().get(2));
+                Loop loop = new Loop(idToken, operands[pc]);
+                loop.index = init;
+                loop.limit = limit;
+                loops.push(loop);
+                break;
+            }
+            case Opcode.FOR_RANGE_NEXT:{
+                Loop loop = loops.peek();
+                if(loop.index < loop.limit){
+                    if(loop.slot < 0)
+                        assignValue(loop.id, new Token(Type.INTEGER, loop.index++));
+                    else
+                        frame.setInt(loop.slot, loop.index++);
+                }else{
+                    loops.pop();
+                    pc = operands[pc];
+                    continue;
                 }
-            }else{
-                throw new InterpreterException("Number of <ITERATOR> must be 1 or 2!");
+                break;
             }
-
-        } else {
-            for(int i = 0; i < node.getChildren().size(); i++){
-                Node child = node.getChildren().get(i);
-                start(child);
-
-                //experimental
-                if(i == 0) {
-                    if("&&".equals(node.getToken().value)){
-                        Token leftBool = stack.pop();
-                        if(isVariable(leftBool)){
-                            leftBool = unwrapVariable(leftBool);
-                        }
-                        stack.push(leftBool);
-
-                        if(!leftBool.isBoolean())
-                            throw new InterpreterException("Left of && operator should be Boolean but was "+leftBool);
-
-                        boolean result = leftBool.toBoolean();
-
-                        if(!result) { //false anyway
+            case Opcode.POP:
+                stack.drop();
+                break;
+            case Opcode.THROW:
+                throw new InterpreterException((String) program.constants[pc]);
+            default:
+                Integer result = process(op);
+                if(result != null){
+                    switch(result){
+                    case Executor.STOP:
+                        stopFlag = true;
+                        return;
+                    case Executor.WAIT:
+                        waitFlag = true;
+                        if(waitMills >= 0){
+                            //come back to the next instruction later without holding the thread
+                            suspended = true;
+                            pc++;
                             return;
                         }
-                    }else if("||".equals(node.getToken().value)) {
-                        Token leftBool = stack.pop();
-                        if(isVariable(leftBool)){
-                            leftBool = unwrapVariable(leftBool);
-                        }
-                        stack.push(leftBool);
 
-                        if(!leftBool.isBoolean())
-                            throw new InterpreterException("Left of || operator should be Boolean but was "+leftBool);
-
-                        boolean result = leftBool.toBoolean();
-
-                        if(result) { //true anyway
-                            return;
+                        synchronized(this){
+                            while(waitFlag){
+                                try {
+                                    this.wait();
+                                } catch (InterruptedException e) {
+                                    e.printStackTrace();
+                                }
+                            }
                         }
+                        break;
+                    default:
+                        throw new InterpreterException(result +" is not a valid return code!");
                     }
                 }
+                break;
             }
+
+            pc++;
         }
+    }
 
-        Integer result = interpret(node);
-        if(result != null){
-            switch(result){
-            case Executor.STOP:
-                stopFlag = true;
-                return;
-            case Executor.WAIT:
-                waitFlag = true;
-                synchronized(this){
-                    while(waitFlag){
-                        try {
-                            this.wait();
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-                break;
-            default:
-                throw new InterpreterException(result +" is not a valid return code!");
-            }
+    private void loadLocal(int slot) {
+        switch(frame.tag(slot)){
+        case ValueStack.INT:
+            stack.pushInt(frame.getInt(slot));
+            break;
+        case ValueStack.DOUBLE:
+            stack.pushDouble(frame.getDouble(slot));
+            break;
+        case ValueStack.BOOLEAN:
+            stack.pushBoolean(frame.getBoolean(slot));
+            break;
+        default:
+            pushValue(frame.get(slot));
+            break;
+        }
+    }
+
+    private void storeLocal(int slot) throws InterpreterException {
+        switch(stack.tag()){
+        case ValueStack.INT:
+            frame.setInt(slot, stack.popInt());
+            break;
+        case ValueStack.DOUBLE:
+            frame.setDouble(slot, stack.popDouble());
+            break;
+        case ValueStack.BOOLEAN:
+            frame.setBoolean(slot, stack.popBoolean());
+            break;
+        default:
+            Token value = stack.pop();
+            frame.set(slot, value.type == Type.NULLVALUE ? null : unwrap(value).value);
+            break;
+        }
+    }
+
+    private boolean testIf() throws InterpreterException {
+        switch(stack.tag()){
+        case ValueStack.BOOLEAN:
+            return stack.popBoolean();
+        case ValueStack.INT:
+            return stack.popInt() != 0;
+        case ValueStack.DOUBLE:
+            return stack.popDouble() != 0.0;
+        default:
+            return testIf(unwrap(stack.pop()));
+        }
+    }
+
+    private boolean testIf(Token resultToken) throws InterpreterException {
+        if(resultToken.type == Type.NULLVALUE){ // null check failed
+            return false;
+        }else if(resultToken.isBoolean()){
+            return (boolean) resultToken.value;
+        }else if(resultToken.isInt()){
+            return resultToken.toInt() != 0;
+        }else if(resultToken.isDouble()){
+            return resultToken.toDouble() != 0.0;
+        }else if(resultToken.value != null){//always true if not null
+            return true;
+        }else{
+            throw new InterpreterException("Unexpected token for IF statement! -- " + resultToken);
         }
     }
 
     /**
      *
-     * @param node
+     * @param op the opcode of the current instruction
      * @return return codes in Executor. null if execution continues.
      * @throws InterpreterException
      */
-    private Integer interpret(Node node) throws InterpreterException {
+    private Integer process(int op) throws InterpreterException {
+        Node node = program.nodes[pc];
         try{
             if(interrupter != null && interrupter.onNodeProcess(node)){
                 return Executor.STOP;
             }
 
-            if (node.getToken().type == Type.BODY
-                    || "IF".equals(node.getToken().value)
-                    || "ELSEIF".equals(node.getToken().value)
-                    || "WHILE".equals(node.getToken().value)) {
-                return null;
-            } else if (node.getToken().type == Type.EXECUTOR) {
-                String command = (String) node.getToken().value;
-
-                Object[] args = new Object[node.getChildren().size()];
-                for (int i = args.length - 1; i >= 0 ; i--) {
-                    Token argument = stack.pop();
-
-                    if (isVariable(argument)) {
-                        argument = unwrapVariable(argument);
-                    }
-
-                    args[i] = argument.value;
+            switch(op){
+            case Opcode.VISIT:
+                break;
+            case Opcode.PUSH:
+                stack.pushToken((Token) program.constants[pc]);
+                break;
+            case Opcode.LITERAL:{
+                Token literal = (Token) program.constants[pc];
+                if(literal.type == Type.INTEGER){
+                    stack.pushInt(Integer.parseInt((String) literal.value));
+                }else if(literal.type == Type.DECIMAL){
+                    stack.pushDouble(Double.parseDouble((String) literal.value));
+                }else{
+                    stack.pushBoolean(Boolean.parseBoolean((String) literal.value));
                 }
+                break;
+            }
+            case Opcode.EXECUTOR:{
+                String command = (String) program.constants[pc];
+                Object[] args = popArguments(program.operands[pc]);
 
                 if (interrupter != null && interrupter.onCommand(context, command, args)) {
                     return null;
                 } else {
-                    if (!executorMap.containsKey(command))
-                        throw new InterpreterException("No executor named #" + command + " found!");
+                    Executor executor = getDefaultExecutor(command);
+                    if (executor == null)
+                        executor = executorMap.get(command);
 
-                    return executorMap.get(command).execute(sync, context, args);
-                }
-            } else if(node.getToken().type == Type.PLACEHOLDER) {
-                String placeholderName = (String) node.getToken().value;
-
-                Object[] args = new Object[node.getChildren().size()];
-                for(int i = args.length - 1; i >= 0; i--) {
-                    Token argument = stack.pop();
-
-                    if(isVariable(argument)) {
-                        argument = unwrapVariable(argument);
-                    }
+                    if (executor == null)
+                        throw new InterpreterException("No executor named #" + command + " found!");
 
-                    args[i] = argument.value;
+                    return executor.execute(sync, context, args);
                 }
+            }
+            case Opcode.PLACEHOLDER:{
+                String placeholderName = (String) program.constants[pc];
+                Object[] args = popArguments(program.operands[pc]);
 
-                if (!placeholderMap.containsKey(placeholderName))
+                Placeholder placeholder = placeholderMap.get(placeholderName);
+                if (placeholder == null)
                     throw new InterpreterException("No placeholder named $" + placeholderName + " found!");
 
-                Object replaced = placeholderMap.get(placeholderName).parse(context, args);
+                Object replaced = parsePlaceholder(placeholderName, placeholder, args);
                 if(replaced == null) {
                     replaced = "$"+placeholderName;
                 }
@@ -422,331 +679,337 @@ public class Interpreter {
                     double d = ((Number) replaced).doubleValue();
                     if (d % 1 == 0) {
                         // whole number
-                        stack.push(new Token(Type.INTEGER, (int) d));
+                        stack.pushInt((int) d);
                     } else {
-                        stack.push(new Token(Type.DECIMAL, d));
+                        stack.pushDouble(d);
                     }
                 } else {
                     stack.push(new Token(Type.EPS, replaced));
                 }
-            } else if (node.getToken().type == Type.OPERATOR_A) {
-                Token right = stack.pop();
-                Token left = stack.pop();
-
-                if(isVariable(right)){
-                    right = unwrapVariable(right);
-                }
-
-                if(isVariable(left)){
-                    left = unwrapVariable(left);
-                }
-
-                switch ((String) node.getToken().value) {
-                case "+":
-                    if(left.type == Type.STRING || right.type == Type.STRING){
-                        stack.push(new Token(Type.STRING, String.valueOf(left.value) + String.valueOf(right.value)));
-                    } else{
-                        if(left.isInt() && right.isInt()){
-                            int leftVal = left.toInt(), rightVal = right.toInt();
-                            stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal + rightVal));
-                        }else{
-                            double leftVal = left.isInt() ? left.toInt() : left.toDouble();
-                            double rightVal = right.isInt() ? right.toInt() : right.toDouble();
-                            stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal + rightVal));
-                        }
-                    }
-                    break;
-                case "-":
-                    if(left.isInt() && right.isInt()){
-                        int leftVal = left.toInt(), rightVal = right.toInt();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal - rightVal));
-                    }else{
-                        double leftVal = left.isInt() ? left.toInt() : left.toDouble();
-                        double rightVal = right.isInt() ? right.toInt() : right.toDouble();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal - rightVal));
-                    }
-                    break;
-                case "*":
-                    if(left.isInt() && right.isInt()){
-                        int leftVal = left.toInt(), rightVal = right.toInt();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal * rightVal));
-                    }else{
-                        double leftVal = left.isInt() ? left.toInt() : left.toDouble();
-                        double rightVal = right.isInt() ? right.toInt() : right.toDouble();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal * rightVal));
-                    }
-                    break;
-                case "/":
-                    if(left.isInt() && right.isInt()){
-                        int leftVal = left.toInt(), rightVal = right.toInt();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal / rightVal));
-                    }else{
-                        double leftVal = left.isInt() ? left.toInt() : left.toDouble();
-                        double rightVal = right.isInt() ? right.toInt() : right.toDouble();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal / rightVal));
-                    }
+                break;
+            }
+            case Opcode.ADD:
+            case Opcode.SUB:
+            case Opcode.MUL:
+            case Opcode.DIV:
+            case Opcode.MOD:
+                arithmetic(op);
+                break;
+            case Opcode.NEG:{
+                if(stack.tag() == ValueStack.INT){
+                    stack.pushInt(-stack.popInt());
                     break;
-                case "%":
-                    if(left.isInt() && right.isInt()){
-                        int leftVal = left.toInt(), rightVal = right.toInt();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal % rightVal));
-                    }else{
-                        double leftVal = left.isInt() ? left.toInt() : left.toDouble();
-                        double rightVal = right.isInt() ? right.toInt() : right.toDouble();
-                        stack.push(new Token(left.isInt() && right.isInt() ? Type.INTEGER : Type.DECIMAL, leftVal % rightVal));
-                    }
+                }else if(stack.tag() == ValueStack.DOUBLE){
+                    stack.pushDouble(-stack.popDouble());
                     break;
-                default:
-                    throw new InterpreterException("Cannot interpret the unknown operator "+node.getToken().value);
                 }
-            }else if(node.getToken().type == Type.UNARYMINUS) {
-                Token value = stack.pop();
 
-                if(isVariable(value)){
-                    value = unwrapVariable(value);
-                }
+                Token value = unwrap(stack.pop());
 
                 if(!value.isNumeric())
                     throw new InterpreterException("Cannot do unary minus operation for non-numeric value "+value);
 
-                stack.push(value.isInt() ? new Token(Type.INTEGER, -value.toInt(), value.row, value.col)
-                        : new Token(Type.DECIMAL, -value.toDouble(), value.row, value.col));
-            }else if(node.getToken().type == Type.OPERATOR_L){
-                if("!".equals(node.getToken().value)){
-                    Token boolval = stack.pop();
-
-                    if(isVariable(boolval)){
-                        boolval = unwrapVariable(boolval);
-                    }
+                if(value.isInt())
+                    stack.pushInt(-value.toInt());
+                else
+                    stack.pushDouble(-value.toDouble());
+                break;
+            }
+            case Opcode.NOT:{
+                switch(stack.tag()){
+                case ValueStack.BOOLEAN:
+                    stack.pushBoolean(!stack.popBoolean());
+                    break;
+                case ValueStack.INT:
+                    stack.pushBoolean(stack.popInt() == 0);
+                    break;
+                case ValueStack.DOUBLE:
+                    stack.pushBoolean(stack.popDouble() == 0.0);
+                    break;
+                default:
+                    Token boolval = unwrap(stack.pop());
 
                     if (boolval.type == Type.NULLVALUE) {// treat null as false
-                        stack.push(new Token(Type.BOOLEAN, true));
+                        stack.pushBoolean(true);
                     } else if (boolval.isBoolean()) {
-                        stack.push(new Token(Type.BOOLEAN, !boolval.toBoolean()));
+                        stack.pushBoolean(!boolval.toBoolean());
                     } else if(boolval.isDouble()){
-                        stack.push(new Token(Type.BOOLEAN, boolval.toDouble() == 0.0));
+                        stack.pushBoolean(boolval.toDouble() == 0.0);
                     } else if(boolval.isInt()){
-                        stack.push(new Token(Type.BOOLEAN, boolval.toInt() == 0));
+                        stack.pushBoolean(boolval.toInt() == 0);
                     } else {
                         throw new InterpreterException("Cannot negate non-boolean value " + boolval);
                     }
-                } else {
-                    Token right = stack.pop();
-                    Token left = stack.pop();
-
-                    if(isVariable(right)){
-                        right = unwrapVariable(right);
-                    }
-
-                    if(isVariable(left)){
-                        left = unwrapVariable(left);
-                    }
-
-                    switch ((String) node.getToken().value) {
-                    case "<":
-                        if(!left.isNumeric() || !right.isNumeric())
-                            throw new InterpreterException("Only numeric values can be compared!");
-
-                        stack.push(new Token(Type.BOOLEAN, (left.isInt() ? left.toInt() : left.toDouble()) < (right.isInt()
-                                ? right.toInt() : right.toDouble())));
-                        break;
-                    case ">":
-                        if(!left.isNumeric() || !right.isNumeric())
-                            throw new InterpreterException("Only numeric values can be compared!");
+                    break;
+                }
+                break;
+            }
+            case Opcode.LT:
+            case Opcode.GT:
+            case Opcode.LE:
+            case Opcode.GE:
+            case Opcode.EQ:
+            case Opcode.NE:
+            case Opcode.AND:
+            case Opcode.OR:
+                compare(op);
+                break;
+            case Opcode.ASSIGN:{
+                Token right = stack.pop();
+                Token left = stack.pop();
 
-                        stack.push(new Token(Type.BOOLEAN, (left.isInt() ? left.toInt() : left.toDouble()) > (right.isInt()
-                                ? right.toInt() : right.toDouble())));
-                        break;
-                    case "<=":
-                        if(!left.isNumeric() || !right.isNumeric())
-                            throw new InterpreterException("Only numeric values can be compared!");
+                assignValue(left, right);
+                break;
+            }
+            case Opcode.ACCESS:{
+                Token right = stack.pop();
+                Token left = stack.pop();
 
-                        stack.push(new Token(Type.BOOLEAN, (left.isInt() ? left.toInt() : left.toDouble()) <= (right.isInt()
-                                ? right.toInt() : right.toDouble())));
-                        break;
-                    case ">=":
-                        if(!left.isNumeric() || !right.isNumeric())
-                            throw new InterpreterException("Only numeric values can be compared!");
+                if(left.type == Type.THIS){
+                    stack.push(right);
+                }else{
+                    stack.push(new Token(Type.ACCESS, new Accessor(evaluateTarget(left, false), (String) right.value)));
+                }
+                break;
+            }
+            case Opcode.ARRAY_ACCESS:{
+                Token right = stack.pop();
+                Token left = stack.pop();
 
-                        stack.push(new Token(Type.BOOLEAN, (left.isInt() ? left.toInt() : left.toDouble()) >= (right.isInt()
-                                ? right.toInt() : right.toDouble())));
-                        break;
-                    case "==":
-                        if (right.type == Type.NULLVALUE) {
-                            stack.push(new Token(Type.BOOLEAN, left.value == null));
-                        } else {
-                            stack.push(new Token(Type.BOOLEAN, left.value.equals(right.value)));
-                        }
+                left = unwrap(left);
+                right = unwrap(right);
 
-                        break;
-                    case "!=":
-                        if (right.type == Type.NULLVALUE) {
-                            stack.push(new Token(Type.BOOLEAN, left.value != null));
-                        } else {
-                            stack.push(new Token(Type.BOOLEAN, !left.value.equals(right.value)));
-                        }
-                        break;
-                    case "&&":
-                        stack.push(new Token(Type.BOOLEAN, left.toBoolean() && right.toBoolean()));
-                        break;
-                    case "||":
-                        stack.push(new Token(Type.BOOLEAN, left.toBoolean() || right.toBoolean()));
-                        break;
-                    }
-                }
-            }else if(node.getToken().type == Type.OPERATOR){
-                Token right, left;
-                switch ((String) node.getToken().value) {
-                case "=":
-                    right = stack.pop();
-                    left = stack.pop();
-
-                    assignValue(left, right);
-                    break;
-                case ".":
-                    right = stack.pop();
-                    //function call
-                    if(right.type == Type.CALL){
-                        Object[] args = new Object[callArgsSize];
-                        for(int i = callArgsSize - 1; i >= 0; i--){
-                            Token argument = stack.pop();
-
-                            if (isVariable(argument)) {
-                                argument = unwrapVariable(argument);
-                            }
+                if(!left.isArray())
+                    throw new InterpreterException(left+" is not an array!");
 
-                            args[i] = argument.value;
-                        }
-                        callArgsSize = 0;
+                if(!right.isInt())
+                    throw new InterpreterException(right+" is not a valid index for array!");
 
-                        left = stack.pop();
+                stack.push(new Token(Type.ACCESS, new Accessor(left.value, (Integer) right.value)));
+                break;
+            }
+            case Opcode.INVOKE:{
+                Object[] args = popArguments(program.operands[pc]);
+                Token left = stack.pop();
 
-                        if(left.type == Type.THIS){
-                            callFunction(new Token(Type.OBJECT, right.value), new Token(Type.OBJECT, selfReference), args);
-                        }else{
-                            Token temp = left;
+                callFunction(evaluateTarget(left, true), (MethodCallSite) program.constants[pc], args);
+                break;
+            }
+            case Opcode.INVOKE_SELF:{
+                Object[] args = popArguments(program.operands[pc]);
 
-                            if(isVariable(left)){
-                                left = unwrapVariable(left);
-                            }
+                callFunction(selfReference, (MethodCallSite) program.constants[pc], args);
+                break;
+            }
+            case Opcode.GVAR:{
+                Token keyToken = unwrap(stack.pop());
 
-                            if(left.getType() == Type.NULLVALUE){
-                                throw new InterpreterException("Could not access "+temp+" because it doesn't exist!");
-                            }
+                if(keyToken.getType() != Type.STRING){
+                    throw new InterpreterException(keyToken+" is not a valid global variable id.");
+                }
 
-                            if(left.isObject()){
-                                callFunction(right, left, args);
-                            }else{
-                                Accessor accessor = (Accessor) left.value;
+                stack.push(new Token(Type.GID, keyToken.value));
+                break;
+            }
+            default:
+                throw new InterpreterException("Cannot interpret the unknown instruction "+Opcode.nameOf(op));
+            }
+        }catch(Exception e){
+            throw new InterpreterException("Error occured while processing Node "+node, e);
+        }
 
-                                Object var;
-                                try {
-                                    var = accessor.evaluateTarget();
-                                } catch (NoSuchFieldException e) {
-                                    throw new InterpreterException("Unknown field " + accessor, e);
-                                } catch (Exception e) {
-                                    throw new InterpreterException("Unknown error " + e.getMessage(), e);
-                                }
+        return null;
+    }
 
-                                callFunction(right, new Token(Type.EPS, var), args);
-                            }
-                        }
-                    }
-                    //field access
-                    else{
-                        left = stack.pop();
+    private Object[] popArguments(int size) throws InterpreterException {
+        Object[] args = new Object[size];
+        for (int i = args.length - 1; i >= 0 ; i--) {
+            args[i] = unwrap(stack.pop()).value;
+        }
+        return args;
+    }
 
-                        if(left.type == Type.THIS){
-                            stack.push(right);
-                        }else{
-                            Token temp = left;
+    /**
+     * Find the actual object that the left side of '.' is pointing.
+     * @param left the left side of '.'
+     * @param call true if it's for function call; false if it's for field access
+     */
+    private Object evaluateTarget(Token left, boolean call) throws InterpreterException {
+        Token temp = left.type == Type.NULLVALUE ? targetToken(left) : left;
 
-                            if(isVariable(left)){
-                                left = unwrapVariable(left);
-                            }
+        left = unwrap(left);
 
-                            if(left.getType() == Type.NULLVALUE){
-                                throw new InterpreterException("Could not access "+temp+" because it doesn't exist!");
-                            }
+        if(left.getType() == Type.NULLVALUE){
+            throw new InterpreterException("Could not access "+temp+" because it doesn't exist!");
+        }
 
-                            if(left.isObject() || left.isArray()){
-                                stack.push(new Token(Type.ACCESS, new Accessor(left.value, (String) right.value)));
-                            }else{
-                                Accessor accessor = (Accessor) left.value;
+        if(left.isObject() || (!call && left.isArray())){
+            return left.value;
+        }else{
+            Accessor accessor = (Accessor) left.value;
 
-                                Object var;
-                                try {
-                                    var = accessor.evaluateTarget();
-                                } catch (NoSuchFieldException e) {
-                                    throw new InterpreterException("Unknown field " + accessor, e);
-                                } catch (Exception e) {
-                                    throw new InterpreterException("Unknown error " + e.getMessage(), e);
-                                }
+            try {
+                return accessor.evaluateTarget();
+            } catch (NoSuchFieldException e) {
+                throw new InterpreterException("Unknown field " + accessor, e);
+            } catch (Exception e) {
+                throw new InterpreterException("Unknown error " + e.getMessage(), e);
+            }
+        }
+    }
 
-                                stack.push(new Token(Type.ACCESS, new Accessor(var, (String) right.value)));
-                            }
-                        }
-                    }
-                    break;
-                }
-            }else if(node.getToken().type == Type.ARRAYACCESS){
-                Token right = stack.pop();
-                Token left = stack.pop();
+    //local variables are already unwrapped when loaded, so find the name of it for the error message
+    private Token targetToken(Token left) {
+        Node target = program.nodes[pc].getChildren().get(0);
+        if(target.getChildren().size() == 2 && target.getChildren().get(0).getToken().type == Type.THIS)
+            return target.getChildren().get(1).getToken();
+        return left;
+    }
 
-                if(isVariable(left)){
-                    left = unwrapVariable(left);
-                }
+    private void arithmetic(int op) throws InterpreterException {
+        byte rightTag = stack.tag(), leftTag = stack.tag(1);
+        if(rightTag == ValueStack.INT && leftTag == ValueStack.INT){
+            int rightVal = stack.popInt(), leftVal = stack.popInt();
+            stack.pushInt(calculate(op, leftVal, rightVal));
+            return;
+        }else if(ValueStack.isNumber(rightTag) && ValueStack.isNumber(leftTag)){
+            double rightVal = stack.popNumber(), leftVal = stack.popNumber();
+            stack.pushDouble(calculate(op, leftVal, rightVal));
+            return;
+        }
 
-                if(isVariable(right)){
-                    right = unwrapVariable(right);
-                }
+        Token right = unwrap(stack.pop());
+        Token left = unwrap(stack.pop());
 
-                if(!left.isArray())
-                    throw new InterpreterException(left+" is not an array!");
+        if(op == Opcode.ADD && (left.type == Type.STRING || right.type == Type.STRING)){
+            stack.push(new Token(Type.STRING, String.valueOf(left.value) + String.valueOf(right.value)));
+        }else if(left.isInt() && right.isInt()){
+            stack.pushInt(calculate(op, left.toInt(), right.toInt()));
+        }else{
+            double leftVal = left.isInt() ? left.toInt() : left.toDouble();
+            double rightVal = right.isInt() ? right.toInt() : right.toDouble();
+            stack.pushDouble(calculate(op, leftVal, rightVal));
+        }
+    }
 
-                if(!right.isInt())
-                    throw new InterpreterException(right+" is not a valid index for array!");
+    private static int calculate(int op, int leftVal, int rightVal) {
+        switch(op){
+        case Opcode.ADD:
+            return leftVal + rightVal;
+        case Opcode.SUB:
+            return leftVal - rightVal;
+        case Opcode.MUL:
+            return leftVal * rightVal;
+        case Opcode.DIV:
+            return leftVal / rightVal;
+        default:
+            return leftVal % rightVal;
+        }
+    }
 
-                stack.push(new Token(Type.ACCESS, new Accessor(left.value, (Integer) right.value)));
-            }else if(node.getToken().type == Type.THIS){
-                stack.push(node.getToken());
-            }else if(node.getToken().type == Type.ID){
-                stack.push(node.getToken());
-            }else if(node.getToken().type == Type.GID){
-                Token keyToken = stack.pop();
-
-                if(isVariable(keyToken)){
-                    keyToken = unwrapVariable(keyToken);
-                }
+    private static double calculate(int op, double leftVal, double rightVal) {
+        switch(op){
+        case Opcode.ADD:
+            return leftVal + rightVal;
+        case Opcode.SUB:
+            return leftVal - rightVal;
+        case Opcode.MUL:
+            return leftVal * rightVal;
+        case Opcode.DIV:
+            return leftVal / rightVal;
+        default:
+            return leftVal % rightVal;
+        }
+    }
 
-                if(keyToken.getType() != Type.STRING){
-                    throw new InterpreterException(keyToken+" is not a valid global variable id.");
+    private void compare(int op) throws InterpreterException {
+        byte rightTag = stack.tag(), leftTag = stack.tag(1);
+        if(ValueStack.isNumber(rightTag) && ValueStack.isNumber(leftTag)){
+            if(op == Opcode.EQ || op == Opcode.NE){
+                //same as Object#equals(), so 1 and 1.0 are not equal
+                boolean equal;
+                if(rightTag != leftTag){
+                    stack.drop();
+                    stack.drop();
+                    equal = false;
+                }else if(rightTag == ValueStack.INT){
+                    equal = stack.popInt() == stack.popInt();
+                }else{
+                    equal = Double.doubleToLongBits(stack.popDouble()) == Double.doubleToLongBits(stack.popDouble());
                 }
+                stack.pushBoolean(op == Opcode.EQ ? equal : !equal);
+                return;
+            }else if(op != Opcode.AND && op != Opcode.OR){
+                double rightVal = stack.popNumber(), leftVal = stack.popNumber();
+                stack.pushBoolean(compare(op, leftVal, rightVal));
+                return;
+            }
+        }else if(rightTag == ValueStack.BOOLEAN && leftTag == ValueStack.BOOLEAN){
+            if(op == Opcode.EQ || op == Opcode.NE || op == Opcode.AND || op == Opcode.OR){
+                boolean rightVal = stack.popBoolean(), leftVal = stack.popBoolean();
+                if(op == Opcode.EQ)
+                    stack.pushBoolean(leftVal == rightVal);
+                else if(op == Opcode.NE)
+                    stack.pushBoolean(leftVal != rightVal);
+                else if(op == Opcode.AND)
+                    stack.pushBoolean(leftVal && rightVal);
+                else
+                    stack.pushBoolean(leftVal || rightVal);
+                return;
+            }
+        }
 
-                stack.push(new Token(Type.GID, keyToken.value));
-            }else if(node.getToken().type == Type.CALL){
-                stack.push(node.getToken());
-                callArgsSize = node.getChildren().size();
-            }else if(node.getToken().type == Type.STRING){
-                stack.push(new Token(node.getToken().type, node.getToken().value));
-            }else if(node.getToken().type == Type.INTEGER){
-                stack.push(new Token(node.getToken().type, Integer.parseInt((String) node.getToken().value)));
-            }else if(node.getToken().type == Type.DECIMAL){
-                stack.push(new Token(node.getToken().type, Double.parseDouble((String) node.getToken().value)));
-            }else if(node.getToken().type == Type.BOOLEAN){
-                stack.push(new Token(node.getToken().type, Boolean.parseBoolean((String) node.getToken().value)));
-            }else if(node.getToken().type == Type.EPS){
-                stack.push(new Token(node.getToken().type, node.getToken().value));
-            }else if(node.getToken().type == Type.NULLVALUE){
-                stack.push(new Token(node.getToken().type, null));
-            }else{
-                throw new InterpreterException("Cannot interpret the unknown node "+node.getToken().type.name());
+        Token right = unwrap(stack.pop());
+        Token left = unwrap(stack.pop());
+
+        boolean result;
+        switch(op){
+        case Opcode.LT:
+        case Opcode.GT:
+        case Opcode.LE:
+        case Opcode.GE:
+            if(!left.isNumeric() || !right.isNumeric())
+                throw new InterpreterException("Only numeric values can be compared!");
+
+            double leftVal = left.isInt() ? left.toInt() : left.toDouble();
+            double rightVal = right.isInt() ? right.toInt() : right.toDouble();
+            result = compare(op, leftVal, rightVal);
+            break;
+        case Opcode.EQ:
+            if (right.type == Type.NULLVALUE) {
+                result = left.value == null;
+            } else {
+                result = left.value.equals(right.value);
             }
-        }catch(Exception e){
-            throw new InterpreterException("Error occured while processing Node "+node, e);
+            break;
+        case Opcode.NE:
+            if (right.type == Type.NULLVALUE) {
+                result = left.value != null;
+            } else {
+                result = !left.value.equals(right.value);
+            }
+            break;
+        case Opcode.AND:
+            result = left.toBoolean() && right.toBoolean();
+            break;
+        default:
+            result = left.toBoolean() || right.toBoolean();
+            break;
         }
+        stack.pushBoolean(result);
+    }
 
-        return null;
+    private static boolean compare(int op, double leftVal, double rightVal) {
+        switch(op){
+        case Opcode.LT:
+            return leftVal < rightVal;
+        case Opcode.GT:
+            return leftVal > rightVal;
+        case Opcode.LE:
+            return leftVal <= rightVal;
+        default:
+            return leftVal >= rightVal;
+        }
     }
 
     private void assignValue(Token id, Token value) throws InterpreterException {
@@ -775,27 +1038,29 @@ public class Interpreter {
             }
         }else if(id.type == Type.ID){
             if(value.type == Type.NULLVALUE) {
-                vars.remove(id.value.toString());
+                varsView.remove(id.value.toString());
             }else {
                 if(isVariable(value)){
                     value = unwrapVariable(value);
                 }
 
-                vars.put(id.value.toString(), value.value);
+                varsView.put(id.value.toString(), value.value);
             }
         }else{
             throw new InterpreterException("Cannot assign value to "+id.value.getClass().getSimpleName());
         }
     }
 
-    private void callFunction(Token right, Token left, Object[] args) throws InterpreterException {
+    private void callFunction(Object target, MethodCallSite callSite, Object[] args) throws InterpreterException {
+        String name = callSite.getMethodName();
+
         Object result;
         try {
-            result = ReflectionUtil.invokeMethod(left.value, (String) right.value, args);
+            result = callSite.invoke(target, args);
         } catch (NoSuchMethodException e) {
-            throw new InterpreterException("Function "+left.value+"."+right.value+" does not exist or parameter types not match.", e);
+            throw new InterpreterException("Function "+target+"."+name+" does not exist or parameter types not match.", e);
         } catch (Exception e) {
-            throw new InterpreterException("Error executing fuction "+left.value+"."+right.value+"!", e);
+            throw new InterpreterException("Error executing fuction "+target+"."+name+"!", e);
         }
 
         if(result != null){
@@ -822,9 +1087,13 @@ public class Interpreter {
                 || token.type == Type.ACCESS;
     }
 
+    private Token unwrap(Token token) throws InterpreterException {
+        return isVariable(token) ? unwrapVariable(token) : token;
+    }
+
     private Token unwrapVariable(Token varToken) throws InterpreterException {
         if(varToken.type == Type.ID){
-            Object var = vars.get(varToken.value);
+            Object var = varsView.get(varToken.value);
 
             return parseValue(var);
         }else if(varToken.type == Type.GID){
@@ -846,9 +1115,24 @@ public class Interpreter {
         }
     }
 
+    //same as parseValue(), but keeps numbers and booleans in the primitive lanes
+    private void pushValue(Object var) {
+        if(var == null){
+            stack.push(NULL);
+        }else if(var.getClass() == Integer.class){
+            stack.pushInt((Integer) var);
+        }else if(var.getClass() == Double.class){
+            stack.pushDouble((Double) var);
+        }else if(var.getClass() == Boolean.class){
+            stack.pushBoolean((Boolean) var);
+        }else{
+            stack.push(parseValue(var));
+        }
+    }
+
     private Token parseValue(Object var) {
         if(var == null){
-            return new Token(Type.NULLVALUE, null);
+            return NULL;
         }else if (var.getClass() == Integer.class) {
             return new Token(Type.INTEGER, var);
         } else if (var.getClass() == Double.class) {
@@ -885,6 +1169,11 @@ public class Interpreter {
 
             double secs = args[0] instanceof Double ? (double) args[0] : (int) args[0];
             long later = (long) (secs * 1000);
+            if(waitScheduler != null){
+                waitMills = later;
+                return WAIT;
+            }
+
             Executor.runTaskLater(new Runnable(){
                 @Override
                 public void run() {
@@ -906,6 +1195,76 @@ public class Interpreter {
         }
     };
 
+    private static class Loop{
+        private final Token id;
+        private final int slot;
+        private Object array;
+        private Iterator<?> iterator;
+        private int index;
+        private int limit;
+
+        private Loop(Token id, int slot) {
+            this.id = id;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * View of local variables which uses the slots while running.
+     */
+    private class LocalVariables extends AbstractMap<String, Object>{
+        @Override
+        public Object get(Object key) {
+            int slot = frame != null ? program.slotOf(key) : -1;
+            return slot < 0 ? vars.get(key) : frame.get(slot);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int slot = frame != null ? program.slotOf(key) : -1;
+            return slot < 0 ? vars.containsKey(key) : frame.get(slot) != null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            int slot = frame != null ? program.slotOf(key) : -1;
+            if(slot < 0)
+                return vars.put(key, value);
+
+            Object old = frame.get(slot);
+            frame.set(slot, value);
+            return old;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            int slot = frame != null ? program.slotOf(key) : -1;
+            if(slot < 0)
+                return vars.remove(key);
+
+            Object old = frame.get(slot);
+            frame.set(slot, null);
+            return old;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            if(frame != null)
+                flushFrame();
+            return vars.entrySet();
+        }
+    }
+
+    public interface WaitScheduler{
+        /**
+         * Call {@link Interpreter#resume()} after the delay. Make sure to handle the result and the exception
+         * the same way as {@link Interpreter#run(Object, ProcessInterrupter)}.
+         * @param interpreter the suspended Interpreter
+         * @param mills the delay in milliseconds
+         */
+        void resumeLater(Interpreter interpreter, long mills);
+    }
+
     public interface ProcessInterrupter{
         /**
          * This will be called every time when a node is processing.
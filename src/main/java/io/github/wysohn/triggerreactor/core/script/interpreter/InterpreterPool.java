@@ -0,0 +1,98 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.wysohn.triggerreactor.core.script.compiler.Program;
+import io.github.wysohn.triggerreactor.core.script.wrapper.SelfReference;
+
+/**
+ * Reuses the Interpreters which finished running the same Program. All the Interpreters from the pool share
+ * the executor, placeholder, and global variable maps given here, so nothing is copied when one is borrowed.
+ * <p>
+ * Make a new pool when the Program changes; {@link #release(Interpreter)} ignores the Interpreters of other Programs.
+ * @author wysohn
+ *
+ */
+public final class InterpreterPool {
+    //more than this is not likely to be running at the same time
+    private static final int MAX_IDLE = 16;
+
+    private final Program program;
+    private final Map<String, Executor> executorMap;
+    private final Map<String, Placeholder> placeholderMap;
+    private final Map<String, Object> gvars;
+    private final SelfReference selfReference;
+    private final ValueStackPool stackPool;
+
+    private final Queue<Interpreter> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public InterpreterPool(Program program, Map<String, Executor> executorMap, Map<String, Placeholder> placeholderMap,
+            Map<String, Object> gvars, SelfReference selfReference) {
+        this.program = program;
+        this.executorMap = executorMap;
+        this.placeholderMap = placeholderMap;
+        this.gvars = gvars;
+        this.selfReference = selfReference;
+        this.stackPool = new ValueStackPool(program.maxStack);
+    }
+
+    public Program getProgram() {
+        return program;
+    }
+
+    /**
+     * Borrow an Interpreter. Give it back with {@link #release(Interpreter)} when the interpretation is over.
+     * @param localVars the local variables for this run
+     * @return an Interpreter ready to start
+     */
+    public Interpreter acquire(Map<String, Object> localVars) {
+        Interpreter interpreter = idle.poll();
+        if(interpreter == null){
+            interpreter = new Interpreter(program, executorMap, placeholderMap, gvars, localVars, selfReference);
+            interpreter.setStackPool(stackPool);
+            return interpreter;
+        }
+
+        idleCount.decrementAndGet();
+        interpreter.reset(localVars);
+        return interpreter;
+    }
+
+    /**
+     * Give back the Interpreter. Do not use the Interpreter after this.
+     * @param interpreter the Interpreter borrowed from this pool
+     */
+    public void release(Interpreter interpreter) {
+        if(interpreter == null || interpreter.getProgram() != program)
+            return;
+
+        //don't keep the variables of the last run alive
+        interpreter.reset(null);
+
+        if(idleCount.incrementAndGet() > MAX_IDLE){
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(interpreter);
+    }
+}
@@ -24,4 +24,13 @@ public abstract class Placeholder extends SynchronizableTask{
      * @return replaced value. Should be always primitive type. Can be null if something went wrong
      */
     public abstract Object parse(Object context, Object... args) throws Exception;
+
+    /**
+     * How long the value returned by {@link #parse(Object, Object...)} can be reused. Override this only if
+     * the value depends on nothing but the player and the arguments.
+     * @return the policy. {@link CachePolicy#NONE} by default.
+     */
+    public CachePolicy getCachePolicy() {
+        return CachePolicy.NONE;
+    }
 }
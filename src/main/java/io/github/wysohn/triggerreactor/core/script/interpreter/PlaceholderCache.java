@@ -0,0 +1,215 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Values of the Placeholders with the TTL {@link CachePolicy}, shared by every Trigger. The number of entries
+ * is limited; when it's full, the expired entries are removed, and if it is still full, new values are simply
+ * not cached until some of the entries expire. The entries are only scanned again once the earliest of them
+ * has expired, so a full cache doesn't scan every entry on every miss.
+ * <p>
+ * Thread safe.
+ * @author wysohn
+ *
+ */
+public class PlaceholderCache {
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**returned by {@link #get(Key)} if there is no valid value. null is a valid value.**/
+    public static final Object MISS = new Object();
+
+    private final int maxSize;
+    private final Function<Object, Object> ownerOf;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    //never later than the expiry of any entry, so nothing can be purged before this time
+    private final AtomicLong earliestExpiry = new AtomicLong(Long.MAX_VALUE);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     *
+     * @param maxSize maximum number of values to keep
+     * @param ownerOf finds who the value belongs to from the context, such as the UUID of the player. The function
+     *  may return null if the context has no owner, and the value is then shared by everyone.
+     */
+    public PlaceholderCache(int maxSize, Function<Object, Object> ownerOf) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ownerOf = ownerOf;
+    }
+
+    /**
+     * @param name name of the Placeholder
+     * @param context the context the Placeholder is used in
+     * @param args the arguments of the Placeholder
+     * @return the key
+     */
+    public Key createKey(String name, Object context, Object[] args) {
+        return new Key(name, context == null ? null : ownerOf.apply(context), args);
+    }
+
+    /**
+     * @param key the key
+     * @return the value; {@link #MISS} if not cached or expired.
+     */
+    public Object get(Key key) {
+        Entry entry = entries.get(key);
+        if(entry == null || entry.isExpired(System.currentTimeMillis())){
+            misses.increment();
+            return MISS;
+        }
+
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * @param key the key
+     * @param value the value. Can be null.
+     * @param ttl milliseconds the value can be reused
+     */
+    public void put(Key key, Object value, long ttl) {
+        long now = System.currentTimeMillis();
+        if(entries.size() >= maxSize && !entries.containsKey(key)){
+            long earliest = earliestExpiry.get();
+            //nothing has expired yet, or another thread is purging already
+            if(now < earliest || !earliestExpiry.compareAndSet(earliest, Long.MAX_VALUE))
+                return;
+
+            purge(now);
+            if(entries.size() >= maxSize)
+                return;
+        }
+
+        long expireAt = now + ttl;
+        entries.put(key, new Entry(value, expireAt));
+        earliestExpiry.accumulateAndGet(expireAt, Math::min);
+    }
+
+    private void purge(long now) {
+        long earliest = Long.MAX_VALUE;
+        Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+        while(iter.hasNext()){
+            Entry entry = iter.next().getValue();
+            if(entry.isExpired(now))
+                iter.remove();
+            else
+                earliest = Math.min(earliest, entry.expireAt);
+        }
+        earliestExpiry.accumulateAndGet(earliest, Math::min);
+    }
+
+    public void clear() {
+        entries.clear();
+        earliestExpiry.set(Long.MAX_VALUE);
+    }
+
+    //the Interpreters count the hits of the values cached per activation here too
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hit = getHitCount();
+        long miss = getMissCount();
+        long ratio = hit + miss == 0 ? 0 : hit * 100 / (hit + miss);
+        return "PlaceholderCache[size="+size()+"/"+maxSize+", hits="+hit+", misses="+miss+", hitRatio="+ratio+"%]";
+    }
+
+    public static final class Key {
+        private final String name;
+        private final Object owner;
+        private final Object[] args;
+        private final int hash;
+
+        /**
+         * @param name name of the Placeholder
+         * @param owner who the value belongs to. Can be null.
+         * @param args the arguments of the Placeholder
+         */
+        public Key(String name, Object owner, Object[] args) {
+            this.name = name;
+            this.owner = owner;
+            this.args = args;
+
+            int hash = name.hashCode();
+            hash = 31 * hash + (owner == null ? 0 : owner.hashCode());
+            hash = 31 * hash + Arrays.hashCode(args);
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && name.equals(other.name)
+                    && (owner == null ? other.owner == null : owner.equals(other.owner))
+                    && Arrays.equals(args, other.args);
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        private Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+}
@@ -17,9 +17,13 @@
 package io.github.wysohn.triggerreactor.core.script.interpreter;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import io.github.wysohn.triggerreactor.core.main.TriggerReactor;
+import io.github.wysohn.triggerreactor.core.main.TriggerWorkerPool;
 
 public abstract class SynchronizableTask {
 
@@ -29,20 +33,14 @@ public abstract class SynchronizableTask {
      * @param mills
      */
     public static void runTaskLater(Runnable task, long mills){
-        new Thread(new Runnable(){
+        TriggerWorkerPool workers = TriggerReactor.getInstance().getWorkerPool();
+        //the scheduler thread only keeps the time, so a slow task can't delay the others
+        workers.schedule(new Runnable(){
             @Override
             public void run() {
-                if(mills > 0){
-                    try {
-                        Thread.sleep(mills);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                task.run();
+                workers.resume(task);
             }
-        }).start();
+        }, mills);
     }
 
     /**
@@ -57,4 +55,49 @@ public abstract class SynchronizableTask {
     public static <T> Future<T> runSyncTaskForFuture(Callable<T> call){
         return TriggerReactor.getInstance().callSyncMethod(call);
     }
+
+    /**
+     * The thread this task can run in. Only the tasks using {@link #callWithAffinity(Callable, String)} are
+     * routed by this; other tasks decide the thread by themselves.
+     * @return the affinity. {@link ThreadAffinity#MAIN_THREAD} by default.
+     */
+    public ThreadAffinity getThreadAffinity(){
+        return ThreadAffinity.MAIN_THREAD;
+    }
+
+    /**
+     * Run the call in the thread {@link #getThreadAffinity()} allows and wait for the result. MAIN_THREAD tasks
+     * called outside of the server thread are handed to the server thread, and the others run right away in
+     * the current thread.
+     * @param call the task
+     * @param displayName name of this task to be used in the error messages. Ex) #MESSAGE
+     * @return the result of the call
+     * @throws Exception
+     */
+    protected <T> T callWithAffinity(Callable<T> call, String displayName) throws Exception{
+        TriggerReactor plugin = TriggerReactor.getInstance();
+        ThreadAffinity affinity = getThreadAffinity();
+
+        if(affinity != ThreadAffinity.MAIN_THREAD || plugin.isServerThread()){
+            if(affinity == ThreadAffinity.IO && plugin.isDebugging() && plugin.isServerThread())
+                plugin.getLogger().warning(displayName+" blocks on I/O, yet it is running in the server thread.");
+
+            try {
+                return call.call();
+            } catch (Exception e1) {
+                e1.printStackTrace();
+                throw new Exception(displayName+" encountered error.", e1);
+            }
+        }else{
+            Future<T> future = runSyncTaskForFuture(call);
+
+            try {
+                return future.get(5, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException e1) {
+                throw new Exception(displayName+" encountered error.", e1);
+            } catch (TimeoutException e1) {
+                throw new Exception(displayName+" was stopped. It took longer than 5 seconds to process. Is the server lagging?", e1);
+            }
+        }
+    }
 }
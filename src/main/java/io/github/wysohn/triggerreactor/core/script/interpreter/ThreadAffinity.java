@@ -0,0 +1,61 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Which thread an Executor or a Placeholder can run in. Javascript Executors and Placeholders declare it
+ * with a comment line in the file, such as
+ * <pre>
+ * // @affinity ASYNC
+ * </pre>
+ * The ones without the comment are {@link #MAIN_THREAD}.
+ * @author wysohn
+ *
+ */
+public enum ThreadAffinity {
+    /**Touches the world or the entities, so it has to run in the server thread.**/
+    MAIN_THREAD,
+    /**Safe to run in any thread, so it runs right in the thread which called it.**/
+    ASYNC,
+    /**Blocks on files, database, or network. Runs in the thread which called it, but should be kept
+     * out of the sync triggers.**/
+    IO;
+
+    private static final Pattern HEADER = Pattern.compile("^\\s*//\\s*@affinity\\s+(\\w+)",
+            Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Find the affinity declared in the script.
+     * @param sourceCode the source code of the script
+     * @return the affinity; {@link #MAIN_THREAD} if not declared or the name is unknown.
+     */
+    public static ThreadAffinity fromSource(String sourceCode) {
+        Matcher matcher = HEADER.matcher(sourceCode);
+        if(!matcher.find())
+            return MAIN_THREAD;
+
+        String name = matcher.group(1).toUpperCase();
+        for(ThreadAffinity affinity : values()){
+            if(affinity.name().equals(name))
+                return affinity;
+        }
+        return MAIN_THREAD;
+    }
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+import io.github.wysohn.triggerreactor.core.script.Token;
+import io.github.wysohn.triggerreactor.core.script.Token.Type;
+
+/**
+ * Operand stack of the Interpreter. int, double, and boolean values are kept in the primitive lanes
+ * so arithmetic and comparisons don't have to box the values or create Tokens. Everything else is kept as
+ * Token in the reference lane. The tag of each element tells which lane holds the value.
+ * <p>
+ * Not thread safe; each Interpreter has its own stack.
+ * @author wysohn
+ *
+ */
+final class ValueStack {
+    static final byte REF = 0;
+    static final byte INT = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+
+    private byte[] tags;
+    private long[] longs;
+    private double[] doubles;
+    private Token[] refs;
+    private int top = 0;
+
+    ValueStack(int capacity) {
+        capacity = Math.max(capacity, 1);
+        tags = new byte[capacity];
+        longs = new long[capacity];
+        doubles = new double[capacity];
+        refs = new Token[capacity];
+    }
+
+    int size() {
+        return top;
+    }
+
+    boolean isEmpty() {
+        return top == 0;
+    }
+
+    void clear() {
+        Arrays.fill(refs, 0, top, null);
+        top = 0;
+    }
+
+    /**
+     * @return tag of the element on the top
+     */
+    byte tag() {
+        return tag(0);
+    }
+
+    /**
+     * @param depth 0 for the top, 1 for the one below the top, and so on.
+     * @return tag of the element
+     */
+    byte tag(int depth) {
+        int index = top - 1 - depth;
+        if(index < 0)
+            throw new EmptyStackException();
+        return tags[index];
+    }
+
+    static boolean isNumber(byte tag) {
+        return tag == INT || tag == DOUBLE;
+    }
+
+    void push(Token token) {
+        ensureCapacity();
+        tags[top] = REF;
+        refs[top++] = token;
+    }
+
+    void pushInt(int value) {
+        ensureCapacity();
+        tags[top] = INT;
+        longs[top++] = value;
+    }
+
+    void pushDouble(double value) {
+        ensureCapacity();
+        tags[top] = DOUBLE;
+        doubles[top++] = value;
+    }
+
+    void pushBoolean(boolean value) {
+        ensureCapacity();
+        tags[top] = BOOLEAN;
+        longs[top++] = value ? 1L : 0L;
+    }
+
+    /**
+     * Push the value into the lane which fits its type.
+     * @param value the Token to push
+     */
+    void pushToken(Token token) {
+        if(token.type == Type.INTEGER && token.value instanceof Integer)
+            pushInt((Integer) token.value);
+        else if(token.type == Type.DECIMAL && token.value instanceof Double)
+            pushDouble((Double) token.value);
+        else if(token.type == Type.BOOLEAN && token.value instanceof Boolean)
+            pushBoolean((Boolean) token.value);
+        else
+            push(token);
+    }
+
+    int popInt() {
+        checkUnderflow();
+        return (int) longs[--top];
+    }
+
+    double popDouble() {
+        checkUnderflow();
+        return doubles[--top];
+    }
+
+    /**
+     * Pop either int or double as double.
+     */
+    double popNumber() {
+        checkUnderflow();
+        --top;
+        return tags[top] == INT ? longs[top] : doubles[top];
+    }
+
+    boolean popBoolean() {
+        checkUnderflow();
+        return longs[--top] != 0L;
+    }
+
+    boolean peekBoolean() {
+        checkUnderflow();
+        return longs[top - 1] != 0L;
+    }
+
+    /**
+     * Pop the top element as Token. Values in primitive lanes are converted to Token here.
+     */
+    Token pop() {
+        checkUnderflow();
+        --top;
+        switch(tags[top]){
+        case INT:
+            return new Token(Type.INTEGER, (int) longs[top]);
+        case DOUBLE:
+            return new Token(Type.DECIMAL, doubles[top]);
+        case BOOLEAN:
+            return new Token(Type.BOOLEAN, longs[top] != 0L);
+        default:
+            Token token = refs[top];
+            refs[top] = null;
+            return token;
+        }
+    }
+
+    /**
+     * Discard the top element.
+     */
+    void drop() {
+        checkUnderflow();
+        refs[--top] = null;
+    }
+
+    private void checkUnderflow() {
+        if(top == 0)
+            throw new EmptyStackException();
+    }
+
+    private void ensureCapacity() {
+        if(top < tags.length)
+            return;
+
+        int newLength = tags.length * 2;
+        tags = Arrays.copyOf(tags, newLength);
+        longs = Arrays.copyOf(longs, newLength);
+        doubles = Arrays.copyOf(doubles, newLength);
+        refs = Arrays.copyOf(refs, newLength);
+    }
+}
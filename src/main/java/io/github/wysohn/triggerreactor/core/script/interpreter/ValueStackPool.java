@@ -0,0 +1,62 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.interpreter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the operand stacks of the finished interpretations so the next activation of the same trigger can
+ * reuse them. Each stack is created with the maximum depth computed by the Compiler, so it never has to grow.
+ * @author wysohn
+ *
+ */
+public final class ValueStackPool {
+    //more than this is not likely to be running at the same time
+    private static final int MAX_IDLE = 16;
+
+    private final int capacity;
+    private final Queue<ValueStack> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param capacity initial capacity of the stacks. Usually {@link io.github.wysohn.triggerreactor.core.script.compiler.Program#maxStack}
+     */
+    public ValueStackPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    ValueStack acquire() {
+        ValueStack stack = idle.poll();
+        if(stack == null)
+            return new ValueStack(capacity);
+
+        idleCount.decrementAndGet();
+        return stack;
+    }
+
+    void release(ValueStack stack) {
+        stack.clear();
+
+        if(idleCount.incrementAndGet() > MAX_IDLE){
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(stack);
+    }
+}
@@ -18,7 +18,7 @@ package io.github.wysohn.triggerreactor.core.script.wrapper;
 
 import java.lang.reflect.Array;
 
-import io.github.wysohn.triggerreactor.tools.ReflectionUtil;
+import io.github.wysohn.triggerreactor.tools.FieldAccessor;
 
 public class Accessor {
     public final Object targetParent;
@@ -38,6 +38,18 @@ public class Accessor {
     }
 
     public Object evaluateTarget() throws NoSuchFieldException, IllegalArgumentException{
+        if(targetParent instanceof Object[]){
+            Object[] array = (Object[]) targetParent;
+            if(target instanceof Integer){
+                int index = (Integer) target;
+                if(index < 0 || index >= array.length)
+                    throw new IllegalArgumentException(target+" is out of bound for array! Size: "+array.length);
+                return array[index];
+            }else if("length".equals(target)){
+                return array.length;
+            }
+        }
+
         if(targetParent.getClass().isArray()){
             if(target instanceof Integer){
                 try {
@@ -51,15 +63,17 @@ public class Accessor {
                 throw new IllegalArgumentException(target.getClass()+" is not a valid type for array operation.");
             }
         }else{
-            return ReflectionUtil.getField(targetParent, (String) target);
+            return FieldAccessor.of(targetParent.getClass(), (String) target).get(targetParent);
         }
     }
 
     public void setTargetValue(Object value) throws NoSuchFieldException, IllegalArgumentException{
-        if(targetParent.getClass().isArray()){
+        if(targetParent instanceof Object[] && (value == null || targetParent.getClass().getComponentType().isInstance(value))){
+            ((Object[]) targetParent)[(Integer) target] = value;
+        }else if(targetParent.getClass().isArray()){
             Array.set(targetParent, (Integer) target, value);
         }else{
-            ReflectionUtil.setField(targetParent, (String) target, value);
+            FieldAccessor.of(targetParent.getClass(), (String) target).set(targetParent, value);
         }
     }
 
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.tools;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cached getter and setter of a field. The field is searched from the class up through its super classes only once,
+ * and the accessors found are kept per class in a {@link ClassValue}, so the cache does not keep the classes of
+ * unloaded plugins alive.
+ * <p>
+ * Thread safe.
+ * @author wysohn
+ *
+ */
+public final class FieldAccessor {
+    private static final FieldAccessor MISSING = new FieldAccessor(null, null, null);
+
+    private static final ClassValue<ConcurrentMap<String, FieldAccessor>> CACHE = new ClassValue<ConcurrentMap<String, FieldAccessor>>() {
+        @Override
+        protected ConcurrentMap<String, FieldAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
+    private FieldAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+        this.field = field;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * Find the field named fieldName in the clazz or one of its super classes.
+     * @param clazz the class to start searching from
+     * @param fieldName name of the field
+     * @return the accessor
+     * @throws NoSuchFieldException if neither the class nor its super classes declare the field.
+     */
+    public static FieldAccessor of(Class<?> clazz, String fieldName) throws NoSuchFieldException {
+        ConcurrentMap<String, FieldAccessor> accessors = CACHE.get(clazz);
+
+        FieldAccessor accessor = accessors.get(fieldName);
+        if(accessor == null){
+            accessor = resolve(clazz, fieldName);
+            FieldAccessor previous = accessors.putIfAbsent(fieldName, accessor);
+            if(previous != null)
+                accessor = previous;
+        }
+
+        if(accessor == MISSING)
+            throw new NoSuchFieldException(fieldName);
+
+        return accessor;
+    }
+
+    private static FieldAccessor resolve(Class<?> clazz, String fieldName) {
+        for(Class<?> c = clazz; c != null; c = c.getSuperclass()){
+            Field field;
+            try {
+                field = c.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+
+            return of(field);
+        }
+
+        return MISSING;
+    }
+
+    /**
+     * Create accessor of the given field. Unlike {@link #of(Class, String)}, the result is not cached.
+     */
+    static FieldAccessor of(Field field) {
+        try {
+            field.setAccessible(true);
+        } catch (RuntimeException e) {
+            //not accessible; the handles below will fail and Field is used instead
+        }
+
+        boolean isStatic = Modifier.isStatic(field.getModifiers());
+
+        MethodHandle getter = null;
+        try {
+            getter = MethodHandles.lookup().unreflectGetter(field);
+            if(isStatic)
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            getter = null;
+        }
+
+        MethodHandle setter = null;
+        try {
+            setter = MethodHandles.lookup().unreflectSetter(field);
+            if(isStatic)
+                setter = MethodHandles.dropArguments(setter, 0, Object.class);
+            setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            //final fields can't have setter handle
+            setter = null;
+        }
+
+        return new FieldAccessor(field, getter, setter);
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @param obj the instance to read from. Ignored if the field is static.
+     * @return value of the field. Primitive values are boxed.
+     * @throws IllegalArgumentException if obj is not an instance of the class which declares the field.
+     */
+    public Object get(Object obj) throws IllegalArgumentException {
+        if(getter == null){
+            try {
+                return field.get(obj);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        try {
+            return (Object) getter.invokeExact(obj);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param obj the instance to write to. Ignored if the field is static.
+     * @param value the new value. Unboxed and widened like {@link Field#set(Object, Object)} if the field is primitive.
+     * @throws IllegalArgumentException if obj is not an instance of the class which declares the field, or the
+     *  value can't be assigned to the field.
+     */
+    public void set(Object obj, Object value) throws IllegalArgumentException {
+        if(setter == null){
+            try {
+                field.set(obj, value);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        try {
+            setter.invokeExact(obj, value);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        } catch (NullPointerException e) {
+            //null can't be unboxed into primitive field
+            if(value == null && field.getType().isPrimitive())
+                throw new IllegalArgumentException(e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(field);
+    }
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.tools;
+
+import java.util.Arrays;
+
+/**
+ * Map with primitive long keys. The keys and the values are kept in two arrays with linear probing,
+ * so neither the lookups nor the insertions of existing keys create any object. Null values are not allowed.
+ * <p>
+ * Not thread safe.
+ * @author wysohn
+ *
+ * @param <V> type of the values
+ */
+public class LongHashMap<V> {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    public LongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expected number of the entries expected. The map grows if more are put.
+     */
+    public LongHashMap(int expected) {
+        int capacity = DEFAULT_CAPACITY;
+        while(capacity * LOAD_FACTOR < expected)
+            capacity <<= 1;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    //spread the bits, as the packed coordinates only differ in a few bits
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int indexOf(long key) {
+        int i = hash(key) & mask;
+        while(values[i] != null){
+            if(keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @param key the key
+     * @param value the value. Can't be null.
+     * @return the previous value; null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(value == null)
+            throw new NullPointerException("LongHashMap doesn't allow null values.");
+
+        int i = hash(key) & mask;
+        while(values[i] != null){
+            if(keys[i] == key){
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if(++size > values.length * LOAD_FACTOR)
+            resize(values.length << 1);
+        return null;
+    }
+
+    /**
+     * @param key the key
+     * @return the removed value; null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if(i < 0)
+            return null;
+
+        V previous = (V) values[i];
+        values[i] = null;
+        size--;
+
+        //move the entries after the hole back, so the probing doesn't stop at the hole
+        int j = i;
+        while(true){
+            j = (j + 1) & mask;
+            if(values[j] == null)
+                break;
+
+            int home = hash(keys[j]) & mask;
+            //move only if the home slot of the entry is not between the hole and the entry
+            if(i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+
+            keys[i] = keys[j];
+            values[i] = values[j];
+            values[j] = null;
+            i = j;
+        }
+
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Visit every entry. The map must not be modified while visiting.
+     * @param visitor the visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryVisitor<V> visitor) {
+        for(int i = 0; i < values.length; i++){
+            if(values[i] != null)
+                visitor.visit(keys[i], (V) values[i]);
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+
+        for(int i = 0; i < oldValues.length; i++){
+            if(oldValues[i] == null)
+                continue;
+
+            int j = hash(oldKeys[i]) & mask;
+            while(values[j] != null)
+                j = (j + 1) & mask;
+
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    public interface EntryVisitor<V>{
+        void visit(long key, V value);
+    }
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.tools;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.apache.commons.lang3.ClassUtils;
+
+/**
+ * Inline cache of a single method call in the script, such as <b>player.getName()</b>. The first call with
+ * a certain receiver class and argument classes finds the Method the same way
+ * {@link ReflectionUtil#invokeMethod(Object, String, Object...)} does, and the following calls with the same classes
+ * go straight to the cached MethodHandle. Up to {@link #MAX_ENTRIES} different combinations are kept per call site;
+ * anything beyond that, and the calls which need varargs packing or String to Enum conversion, simply fall back to
+ * {@link ReflectionUtil}.
+ * <p>
+ * Thread safe. A call site belongs to a compiled Program, so it is shared by every execution of the trigger.
+ * @author wysohn
+ *
+ */
+public final class MethodCallSite {
+    public static final int MAX_ENTRIES = 4;
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private final String methodName;
+    private volatile Entry[] entries = EMPTY;
+
+    public MethodCallSite(String methodName) {
+        this.methodName = methodName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     *
+     * @return number of receiver/argument class combinations currently cached.
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * Invoke the method on the target. The behavior, including the exceptions, is same as
+     * {@link ReflectionUtil#invokeMethod(Object, String, Object...)}.
+     * @param target the receiver
+     * @param args the arguments. The array may be modified.
+     * @return return value of the method; null if the method is void.
+     */
+    public Object invoke(Object target, Object... args)
+            throws NoSuchMethodException, IllegalArgumentException, InvocationTargetException {
+        if(target == null || hasNull(args))
+            return ReflectionUtil.invokeMethod(target, methodName, args);
+
+        Class<?> clazz = target.getClass();
+
+        Entry[] entries = this.entries;
+        for(Entry entry : entries){
+            if(entry.matches(clazz, args))
+                return entry.invoke(target, args);
+        }
+
+        if(entries.length < MAX_ENTRIES){
+            Entry entry = resolve(clazz, args);
+            if(entry != null){
+                add(entry);
+                return entry.invoke(target, args);
+            }
+        }
+
+        return ReflectionUtil.invokeMethod(target, methodName, args);
+    }
+
+    private synchronized void add(Entry entry) {
+        Entry[] old = this.entries;
+        if(old.length >= MAX_ENTRIES)
+            return;
+
+        for(Entry each : old){
+            if(each.receiver == entry.receiver && each.sameTypes(entry.argTypes))
+                return;
+        }
+
+        Entry[] copy = new Entry[old.length + 1];
+        System.arraycopy(old, 0, copy, 0, old.length);
+        copy[old.length] = entry;
+        this.entries = copy;
+    }
+
+    /**
+     * Find the method ReflectionUtil would pick for these classes.
+     * @return the Entry; null if the call has to be left to ReflectionUtil.
+     */
+    private Entry resolve(Class<?> clazz, Object[] args) {
+        for(Method method : clazz.getMethods()){
+            if(!method.getName().equals(methodName))
+                continue;
+
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if(method.isVarArgs()){
+                if(parameterTypes.length - args.length >= 2)
+                    continue;
+
+                //varargs are packed differently each call
+                return null;
+            }
+
+            if(parameterTypes.length != args.length)
+                continue;
+
+            boolean matches = true;
+            for(int i = 0; i < parameterTypes.length; i++){
+                //String to Enum conversion depends on the value, not the class
+                if(args[i] instanceof String && parameterTypes[i].isEnum())
+                    return null;
+
+                if(!ClassUtils.isAssignable(args[i].getClass(), parameterTypes[i], true)){
+                    matches = false;
+                    break;
+                }
+            }
+
+            if(matches)
+                return createEntry(clazz, method, args);
+        }
+
+        return null;
+    }
+
+    private static Entry createEntry(Class<?> clazz, Method method, Object[] args) {
+        MethodHandle handle;
+        try{
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        }catch(IllegalAccessException | RuntimeException e){
+            return null;
+        }
+
+        if(Modifier.isStatic(method.getModifiers()))
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+
+        handle = handle.asType(MethodType.genericMethodType(args.length + 1))
+                .asSpreader(Object[].class, args.length);
+
+        Class<?>[] argTypes = new Class<?>[args.length];
+        for(int i = 0; i < args.length; i++)
+            argTypes[i] = args[i].getClass();
+
+        return new Entry(clazz, argTypes, handle);
+    }
+
+    private static boolean hasNull(Object[] args) {
+        for(Object arg : args){
+            if(arg == null)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return methodName;
+    }
+
+    private static final class Entry {
+        private final Class<?> receiver;
+        private final Class<?>[] argTypes;
+        private final MethodHandle handle;
+
+        private Entry(Class<?> receiver, Class<?>[] argTypes, MethodHandle handle) {
+            this.receiver = receiver;
+            this.argTypes = argTypes;
+            this.handle = handle;
+        }
+
+        private boolean matches(Class<?> clazz, Object[] args) {
+            if(receiver != clazz || argTypes.length != args.length)
+                return false;
+
+            for(int i = 0; i < args.length; i++){
+                if(args[i].getClass() != argTypes[i])
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean sameTypes(Class<?>[] types) {
+            if(argTypes.length != types.length)
+                return false;
+
+            for(int i = 0; i < types.length; i++){
+                if(argTypes[i] != types[i])
+                    return false;
+            }
+            return true;
+        }
+
+        private Object invoke(Object target, Object[] args) throws InvocationTargetException {
+            try{
+                return (Object) handle.invokeExact(target, args);
+            }catch(Throwable e){
+                //same as Method#invoke so the callers can handle the exception the same way
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+}
@@ -39,16 +39,7 @@ import org.apache.commons.lang3.ClassUtils;
 
 public class ReflectionUtil {
     public static void setField(Object obj, String fieldName, Object value) throws NoSuchFieldException, IllegalArgumentException{
-        Class<?> clazz = obj.getClass();
-
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
-
-        try {
-            field.set(obj, value);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
+        FieldAccessor.of(obj.getClass(), fieldName).set(obj, value);
     }
 
     public static void setFinalField(Object obj, String fieldName, Object value) throws NoSuchFieldException{
@@ -94,31 +85,11 @@ public class ReflectionUtil {
     }
 
     public static Object getField(Object obj, String fieldName) throws NoSuchFieldException, IllegalArgumentException{
-        Class<?> clazz = obj.getClass();
-
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
-
-        try {
-            return field.get(obj);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-
-        return null;
+        return FieldAccessor.of(obj.getClass(), fieldName).get(obj);
     }
 
     public static Object getField(Class<?> clazz, Object obj, String fieldName) throws NoSuchFieldException, IllegalArgumentException{
-        Field field = clazz.getDeclaredField(fieldName);
-        field.setAccessible(true);
-
-        try {
-            return field.get(obj);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-
-        return null;
+        return FieldAccessor.of(clazz, fieldName).get(obj);
     }
 
     @SuppressWarnings({ "unchecked", "unchecked" })
@@ -266,38 +237,19 @@ public class ReflectionUtil {
     public static Map<String, Object> extractVariables(Object e){
         Map<String, Object> map = new HashMap<String, Object>();
 
-        Class<?> clazz = e.getClass();
-        for(Field field : getAllFields(new ArrayList<Field>(), clazz)){
-            field.setAccessible(true);
-            try {
-                map.put(field.getName(), field.get(e));
-            } catch (IllegalArgumentException | IllegalAccessException e1) {
-                e1.printStackTrace();
-            }
-        }
+        VariableExtractor.of(e.getClass()).extract(e, map);
 
         return map;
     }
 
+    /**
+     * Same as {@link #extractVariables(Object)}. Enum values are kept as they are, as they always have been.
+     *
+     * @param e
+     * @return
+     */
     public static Map<String, Object> extractVariablesWithEnumAsString(Object e){
-        Map<String, Object> map = new HashMap<String, Object>();
-
-        Class<?> clazz = e.getClass();
-        for(Field field : getAllFields(new ArrayList<Field>(), clazz)){
-            field.setAccessible(true);
-            try {
-                if(field.getClass().isEnum()){
-                    Enum<?> enumVal = (Enum<?>) field.get(e);
-                    map.put(field.getName(), enumVal.name());
-                }else{
-                    map.put(field.getName(), field.get(e));
-                }
-            } catch (IllegalArgumentException | IllegalAccessException e1) {
-                e1.printStackTrace();
-            }
-        }
-
-        return map;
+        return extractVariables(e);
     }
 
     /**
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.tools;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads every field of an event (or any other context object) into a Map, so the scripts can use them as variables.
+ * The fields of a class are scanned only the first time the class is seen, and the accessors are kept in a
+ * {@link ClassValue} so the classes of unloaded plugins are not held.
+ * <p>
+ * The result is same as {@link ReflectionUtil#extractVariables(Object)}: fields of the class and all of its super classes,
+ * where a field of the super class wins if both have the same name.
+ * @author wysohn
+ *
+ */
+public final class VariableExtractor {
+    private static final ClassValue<VariableExtractor> CACHE = new ClassValue<VariableExtractor>() {
+        @Override
+        protected VariableExtractor computeValue(Class<?> type) {
+            return new VariableExtractor(type);
+        }
+    };
+
+    private final String[] names;
+    private final FieldAccessor[] accessors;
+
+    private VariableExtractor(Class<?> clazz) {
+        //same order as getAllFields() so the later ones overwrite the earlier ones
+        Map<String, Field> fields = new LinkedHashMap<>();
+        for(Field field : ReflectionUtil.getAllFields(new ArrayList<Field>(), clazz)){
+            try {
+                field.setAccessible(true);
+            } catch (RuntimeException e) {
+                continue;
+            }
+
+            fields.remove(field.getName());
+            fields.put(field.getName(), field);
+        }
+
+        List<String> names = new ArrayList<>(fields.keySet());
+        this.names = names.toArray(new String[names.size()]);
+        this.accessors = new FieldAccessor[this.names.length];
+        for(int i = 0; i < this.names.length; i++)
+            accessors[i] = FieldAccessor.of(fields.get(this.names[i]));
+    }
+
+    private VariableExtractor(String[] names, FieldAccessor[] accessors) {
+        this.names = names;
+        this.accessors = accessors;
+    }
+
+    /**
+     * @param clazz class of the object to extract variables from
+     * @return the extractor, which is shared by every caller.
+     */
+    public static VariableExtractor of(Class<?> clazz) {
+        return CACHE.get(clazz);
+    }
+
+    /**
+     * Put the value of every field of the obj into the map.
+     * @param obj the object to read. Must be instance of the class this extractor is made for.
+     * @param variables the map to put the values in. Existing values with the same names are replaced.
+     */
+    public void extract(Object obj, Map<String, Object> variables) {
+        for(int i = 0; i < names.length; i++){
+            try {
+                variables.put(names[i], accessors[i].get(obj));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Read the value of one field without putting it into a Map.
+     * @param obj the object to read. Must be instance of the class this extractor is made for.
+     * @param name name of the variable
+     * @return the value; null if this extractor doesn't read the field of the name.
+     */
+    public Object extract(Object obj, String name) {
+        for(int i = 0; i < names.length; i++){
+            if(!names[i].equals(name))
+                continue;
+
+            try {
+                return accessors[i].get(obj);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Make an extractor which only reads the fields of the given names. Useful when it is known beforehand
+     * which variables will be used, such as the local variables of a compiled script.
+     * @param wanted names of the variables
+     * @return the new extractor
+     */
+    public VariableExtractor select(String[] wanted) {
+        Set<String> wantedSet = new HashSet<>(Arrays.asList(wanted));
+
+        List<String> names = new ArrayList<>();
+        List<FieldAccessor> accessors = new ArrayList<>();
+        for(int i = 0; i < this.names.length; i++){
+            if(!wantedSet.contains(this.names[i]))
+                continue;
+
+            names.add(this.names[i]);
+            accessors.add(this.accessors[i]);
+        }
+
+        return new VariableExtractor(names.toArray(new String[names.size()]),
+                accessors.toArray(new FieldAccessor[accessors.size()]));
+    }
+
+    /**
+     *
+     * @return number of the fields this extractor reads.
+     */
+    public int size() {
+        return names.length;
+    }
+}
@@ -14,6 +14,7 @@
  *     You should have received a copy of the GNU General Public License
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *******************************************************************************/
+// @native
 function MESSAGE(args){
 	var String = Java.type('java.lang.String');
 	
@@ -14,6 +14,7 @@
  *     You should have received a copy of the GNU General Public License
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *******************************************************************************/
+// @affinity ASYNC
 function currenttimeseconds(args){
 	return Math.floor(Date.now() / 1000);
 }
\ No newline at end of file
@@ -14,6 +14,7 @@
  *     You should have received a copy of the GNU General Public License
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *******************************************************************************/
+// @cache 1000 global
 function onlineplayers(args){
 	var players = BukkitUtil.getOnlinePlayers();
 	
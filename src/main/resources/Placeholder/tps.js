@@ -14,9 +14,7 @@
  *     You should have received a copy of the GNU General Public License
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
  *******************************************************************************/
+// @cache 1000 global
 function tps(args){
-	if(player == null)
-		return null;
-
 	return plugin.getTpsHelper().getTPS();
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import io.github.wysohn.triggerreactor.core.main.MainThreadQueue.Lane;
+
+public class TestMainThreadQueue {
+    private Callable<Void> record(List<String> order, String name) {
+        return new Callable<Void>(){
+            @Override
+            public Void call() throws Exception {
+                order.add(name);
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void testTriggerLaneFirst() throws Exception {
+        MainThreadQueue queue = new MainThreadQueue(1000L);
+        List<String> order = new ArrayList<>();
+
+        queue.submit(record(order, "bg1"), Lane.BACKGROUND);
+        queue.submit(record(order, "trg1"), Lane.TRIGGER);
+        queue.submit(record(order, "bg2"), Lane.BACKGROUND);
+        Future<Void> last = queue.submit(record(order, "trg2"), Lane.TRIGGER);
+
+        assertEquals(4, queue.drain());
+        assertEquals(Arrays.asList("trg1", "trg2", "bg1", "bg2"), order);
+        assertTrue(last.isDone());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getOverBudgetTicks());
+    }
+
+    @Test
+    public void testBudgetCarriesOver() throws Exception {
+        MainThreadQueue queue = new MainThreadQueue(1L);
+        List<String> order = new ArrayList<>();
+
+        for(int i = 0; i < 3; i++){
+            final String name = "slow"+i;
+            queue.submit(new Callable<Void>(){
+                @Override
+                public Void call() throws Exception {
+                    Thread.sleep(5L);
+                    order.add(name);
+                    return null;
+                }
+            }, Lane.BACKGROUND);
+        }
+
+        //each task alone uses up the budget, but one still runs every tick
+        assertEquals(1, queue.drain());
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getOverBudgetTicks());
+
+        //a sync Trigger submitted later still goes ahead of the leftovers
+        queue.submit(record(order, "trg"), Lane.TRIGGER);
+        assertEquals(2, queue.drain());
+        assertEquals(1, queue.drain());
+        assertEquals(0, queue.drain());
+
+        assertEquals(Arrays.asList("slow0", "trg", "slow1", "slow2"), order);
+        assertEquals(4, queue.getExecutedCount());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        MainThreadQueue queue = new MainThreadQueue(10L);
+        List<String> order = new ArrayList<>();
+
+        Future<Void> waiting = queue.submit(record(order, "waiting"), Lane.TRIGGER);
+        queue.shutdown();
+        assertTrue(waiting.isCancelled());
+
+        try{
+            queue.submit(record(order, "late"), Lane.BACKGROUND);
+            fail("submitted after shutdown");
+        }catch(RejectedExecutionException e){
+
+        }
+
+        assertEquals(0, queue.drain());
+        assertTrue(order.isEmpty());
+    }
+
+    @Test
+    public void testShutdownWhileSubmitting() throws Exception {
+        MainThreadQueue queue = new MainThreadQueue(10L);
+        List<Future<Void>> futures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(4);
+
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++){
+            final Lane lane = i % 2 == 0 ? Lane.TRIGGER : Lane.BACKGROUND;
+            threads[i] = new Thread(new Runnable(){
+                @Override
+                public void run() {
+                    started.countDown();
+                    try{
+                        while(true)
+                            futures.add(queue.submit(record(new ArrayList<>(), "task"), lane));
+                    }catch(RejectedExecutionException e){
+                        //expected once the queue is shut down
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        started.await();
+        Thread.sleep(20L);
+        queue.shutdown();
+        for(Thread thread : threads)
+            thread.join(5000L);
+
+        //nothing drains the queue, so every accepted task must have been cancelled rather than left behind
+        synchronized(futures){
+            for(Future<Void> future : futures)
+                assertTrue(future.isCancelled());
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
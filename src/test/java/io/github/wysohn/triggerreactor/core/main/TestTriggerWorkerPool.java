@@ -0,0 +1,181 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.github.wysohn.triggerreactor.core.main.TriggerWorkerPool.RejectionPolicy;
+
+public class TestTriggerWorkerPool {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicBoolean serverThread = new AtomicBoolean();
+    private TriggerWorkerPool pool;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if(pool != null)
+            pool.shutdown();
+    }
+
+    private TriggerWorkerPool createPool(int threads, int queueSize, int maxPerTrigger, RejectionPolicy policy) {
+        pool = new TriggerWorkerPool(null, threads, queueSize, maxPerTrigger, policy){
+            @Override
+            protected boolean isServerThread() {
+                return serverThread.get();
+            }
+        };
+        return pool;
+    }
+
+    //holds the worker thread until the test releases it
+    private Runnable blocking(CountDownLatch started) {
+        return new Runnable(){
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private Runnable counting(CountDownLatch done) {
+        return new Runnable(){
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+    }
+
+    //one thread busy and the queue of one task full
+    private void fill(TriggerWorkerPool pool) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        assertTrue(pool.execute(blocking(started)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(pool.execute(blocking(new CountDownLatch(1))));
+    }
+
+    @Test
+    public void testMaxPerTrigger() throws Exception {
+        TriggerWorkerPool pool = createPool(1, 10, 2, RejectionPolicy.DISCARD);
+        AtomicInteger running = new AtomicInteger();
+
+        CountDownLatch started = new CountDownLatch(1);
+        assertTrue(pool.execute(blocking(started), running));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(pool.execute(counting(done), running));
+        assertFalse(pool.execute(counting(new CountDownLatch(1)), running));
+
+        assertEquals(2, running.get());
+        assertEquals(1, pool.getThrottledCount());
+        assertEquals(0, pool.getRejectedCount());
+
+        //other owners are not limited by this one
+        CountDownLatch other = new CountDownLatch(1);
+        assertTrue(pool.execute(counting(other), new AtomicInteger()));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+
+        long end = System.currentTimeMillis() + 5000L;
+        while(running.get() != 0 && System.currentTimeMillis() < end)
+            Thread.sleep(10L);
+        assertEquals(0, running.get());
+        assertEquals(1, pool.getThrottledCount());
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        TriggerWorkerPool pool = createPool(1, 1, 0, RejectionPolicy.DISCARD);
+        fill(pool);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicBoolean ran = new AtomicBoolean();
+        assertFalse(pool.execute(new Runnable(){
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        }, running));
+
+        assertFalse(ran.get());
+        assertEquals(0, running.get());
+        assertEquals(1, pool.getRejectedCount());
+        assertEquals(3, pool.getSubmittedCount());
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        TriggerWorkerPool pool = createPool(1, 1, 0, RejectionPolicy.CALLER_RUNS);
+        fill(pool);
+
+        AtomicReference<Thread> ranIn = new AtomicReference<>();
+        Runnable task = new Runnable(){
+            @Override
+            public void run() {
+                ranIn.set(Thread.currentThread());
+            }
+        };
+
+        assertTrue(pool.execute(task));
+        assertSame(Thread.currentThread(), ranIn.get());
+        assertEquals(0, pool.getRejectedCount());
+
+        //the server thread must not run an async Trigger, so the task is dropped instead
+        ranIn.set(null);
+        serverThread.set(true);
+        assertFalse(pool.execute(task));
+        assertNull(ranIn.get());
+        assertEquals(1, pool.getRejectedCount());
+    }
+
+    @Test
+    public void testResumeBypassesQueue() throws Exception {
+        TriggerWorkerPool pool = createPool(1, 1, 0, RejectionPolicy.DISCARD);
+        fill(pool);
+        assertFalse(pool.execute(counting(new CountDownLatch(1))));
+
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(pool.resume(counting(done)));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getRejectedCount());
+
+        pool.shutdown();
+        assertFalse(pool.resume(counting(new CountDownLatch(1))));
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestJSFunction {
+    private ScriptEngineManager sem;
+    private ScriptEngine engine;
+
+    @Before
+    public void setUp() {
+        sem = new ScriptEngineManager();
+        engine = IScriptEngineInitializer.getNashornEngine(sem);
+        //Nashorn is removed from the JDK since 15
+        Assume.assumeNotNull(engine);
+    }
+
+    @Test
+    public void testVariablesDontLeak() throws Exception {
+        JSFunction function = new JSFunction("TEST", engine,
+                "function TEST(args){"
+                + "    return typeof player === 'undefined' ? 'none' : player + args[0];"
+                + "}");
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("player", "wysohn");
+        assertEquals("wysohn1", function.invoke(variables, new Object[]{1}));
+
+        //same context is reused, but the variable of the previous call is gone
+        assertEquals("none", function.invoke(new HashMap<String, Object>(), new Object[]{2}));
+    }
+
+    @Test
+    public void testScriptGlobalsKept() throws Exception {
+        JSFunction function = new JSFunction("TEST", engine,
+                "var player = 'default';"
+                + "function TEST(args){"
+                + "    return player;"
+                + "}");
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("player", "wysohn");
+        assertEquals("wysohn", function.invoke(variables, new Object[0]));
+
+        //the value defined by the script itself comes back after the call
+        assertEquals("default", function.invoke(new HashMap<String, Object>(), new Object[0]));
+    }
+
+    @Test
+    public void testGlobalScope() throws Exception {
+        sem.put("PREFIX", "global-");
+
+        JSFunction function = new JSFunction("TEST", engine,
+                "function TEST(args){"
+                + "    return PREFIX + args[0];"
+                + "}");
+
+        assertEquals("global-a", function.invoke(new HashMap<String, Object>(), new Object[]{"a"}));
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        JSFunction function = new JSFunction("TEST", engine,
+                "function TEST(args){"
+                + "    var sum = 0;"
+                + "    for(var i = 0; i < 100; i++)"
+                + "        sum += value;"
+                + "    return sum / 100 + args[0];"
+                + "}");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try{
+            List<Future<Object>> results = new ArrayList<>();
+            for(int i = 0; i < 400; i++){
+                final int value = i;
+                results.add(pool.submit(new Callable<Object>(){
+                    @Override
+                    public Object call() throws Exception {
+                        Map<String, Object> variables = new HashMap<>();
+                        variables.put("value", value);
+                        return function.invoke(variables, new Object[]{value});
+                    }
+                }));
+            }
+
+            for(int i = 0; i < results.size(); i++)
+                assertEquals(2.0 * i, ((Number) results.get(i).get()).doubleValue(), 0.0);
+        }finally{
+            pool.shutdown();
+        }
+    }
+}
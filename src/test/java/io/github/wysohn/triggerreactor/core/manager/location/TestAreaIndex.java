@@ -0,0 +1,108 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestAreaIndex {
+    private static Area area(int x1, int y1, int z1, int x2, int y2, int z2) {
+        return new Area(new SimpleLocation("world", x1, y1, z1), new SimpleLocation("world", x2, y2, z2));
+    }
+
+    @Test
+    public void testPointQuery() {
+        AreaIndex<String> index = new AreaIndex<>();
+        index.put(area(0, 0, 0, 10, 10, 10), "small");
+        index.put(area(100, 0, 100, 1000000, 255, 1000000), "huge");
+
+        assertEquals("small", index.get(5, 5, 5).getValue());
+        assertEquals("huge", index.get(500000, 64, 100).getValue());
+        assertNull(index.get(50, 5, 50));
+        assertNull(index.get(5, 11, 5));
+
+        assertEquals("small", index.remove(area(0, 0, 0, 10, 10, 10)));
+        assertNull(index.get(5, 5, 5));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testRandomAgainstLinearScan() {
+        Random random = new Random(1234);
+        AreaIndex<Integer> index = new AreaIndex<>();
+        List<Area> areas = new ArrayList<>();
+
+        //non-overlapping cells of a grid, like the areas of a real server
+        for(int i = 0; i < 2000; i++){
+            int x = random.nextInt(200) * 20, z = random.nextInt(200) * 20, y = random.nextInt(10) * 20;
+            Area area = area(x, y, z, x + random.nextInt(19), y + random.nextInt(19), z + random.nextInt(19));
+            if(areas.contains(area))
+                continue;
+
+            areas.add(area);
+            index.put(area, areas.size());
+        }
+
+        //remove about half of them
+        for(int i = areas.size() - 1; i >= 0; i -= 2){
+            assertNotNull(index.remove(areas.get(i)));
+            areas.remove(i);
+        }
+        assertEquals(areas.size(), index.size());
+
+        for(int i = 0; i < 5000; i++){
+            SimpleLocation sloc = new SimpleLocation("world", random.nextInt(4000), random.nextInt(200), random.nextInt(4000));
+
+            Set<Area> expected = new HashSet<>();
+            for(Area area : areas){
+                if(area.isInThisArea(sloc))
+                    expected.add(area);
+            }
+
+            Map.Entry<Area, Integer> found = index.get(sloc.getX(), sloc.getY(), sloc.getZ());
+            if(expected.isEmpty())
+                assertNull(found);
+            else
+                assertTrue(expected.contains(found.getKey()));
+        }
+
+        Area box = area(1000, 0, 1000, 1500, 100, 1500);
+        Set<Area> expected = new HashSet<>();
+        for(Area area : areas){
+            if(box.getSmallest().getX() <= area.getLargest().getX() && area.getSmallest().getX() <= box.getLargest().getX()
+                    && box.getSmallest().getY() <= area.getLargest().getY() && area.getSmallest().getY() <= box.getLargest().getY()
+                    && box.getSmallest().getZ() <= area.getLargest().getZ() && area.getSmallest().getZ() <= box.getLargest().getZ())
+                expected.add(area);
+        }
+
+        Set<Area> overlapping = new HashSet<>();
+        for(Map.Entry<Area, Integer> entry : index.getOverlapping(box))
+            overlapping.add(entry.getKey());
+        assertEquals(expected, overlapping);
+    }
+}
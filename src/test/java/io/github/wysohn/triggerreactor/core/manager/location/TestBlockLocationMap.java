@@ -0,0 +1,152 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.manager.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestBlockLocationMap {
+    @Test
+    public void testKeys() {
+        int[][] coords = {{0, 0, 0}, {-1, -1, -1}, {29999999, 255, -29999999}, {-30000000, 4095 - 2048, 12345}, {17, -64, -17}};
+        for(int[] c : coords){
+            long key = LocationKeys.blockKey(c[0], c[1], c[2]);
+            assertEquals(c[0], LocationKeys.blockX(key));
+            assertEquals(c[1], LocationKeys.blockY(key));
+            assertEquals(c[2], LocationKeys.blockZ(key));
+            assertEquals(LocationKeys.chunkKey(c[0] >> 4, c[2] >> 4), LocationKeys.chunkKeyOf(key));
+        }
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        Random random = new Random(1234);
+        BlockLocationMap<Integer> map = new BlockLocationMap<>();
+        Map<SimpleLocation, Integer> expected = new HashMap<>();
+
+        String[] worlds = {"world", "world_nether", "world_the_end"};
+        for(int i = 0; i < 20000; i++){
+            SimpleLocation sloc = new SimpleLocation(worlds[random.nextInt(worlds.length)],
+                    random.nextInt(64) - 32, random.nextInt(16), random.nextInt(64) - 32);
+            if(random.nextInt(3) == 0){
+                assertEquals(expected.remove(sloc), map.remove(sloc));
+            }else{
+                assertEquals(expected.put(sloc, i), map.put(sloc, i));
+            }
+        }
+
+        for(String world : worlds){
+            for(int x = -40; x < 40; x++){
+                for(int z = -40; z < 40; z++){
+                    for(int y = 0; y < 16; y++){
+                        assertEquals(expected.get(new SimpleLocation(world, x, y, z)), map.get(world, x, y, z));
+                    }
+                }
+            }
+        }
+        assertEquals(expected.size(), map.entries().size());
+
+        int inChunk = 0;
+        for(SimpleLocation sloc : expected.keySet()){
+            if(sloc.getWorld().equals("world") && sloc.getX() >> 4 == -1 && sloc.getZ() >> 4 == 1)
+                inChunk++;
+        }
+        assertEquals(inChunk, map.entriesInChunk(new SimpleChunkLocation("world", -1, 1)).size());
+
+        assertNull(map.get("unknown_world", 0, 0, 0));
+        map.clear();
+        assertEquals(0, map.entries().size());
+    }
+
+    @Test
+    public void testColumnBitmap() {
+        ColumnBitmap bitmap = new ColumnBitmap();
+        assertFalse(bitmap.contains(0, 0));
+
+        bitmap.add(-1, 17);
+        bitmap.add(-1, 17);
+        bitmap.add(5, 5);
+        assertTrue(bitmap.contains(-1, 17));
+        assertTrue(bitmap.contains(5, 5));
+        assertFalse(bitmap.contains(-1, 16));
+        assertFalse(bitmap.contains(15, 17));
+
+        bitmap.remove(-1, 17);
+        assertTrue(bitmap.contains(-1, 17));
+        bitmap.remove(-1, 17);
+        assertFalse(bitmap.contains(-1, 17));
+
+        bitmap.remove(5, 5);
+        assertFalse(bitmap.contains(5, 5));
+    }
+
+    @Test
+    public void testGetWhilePutting() throws Exception {
+        BlockLocationMap<Integer> map = new BlockLocationMap<>();
+        AtomicInteger written = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        //each block is in a chunk of its own, so the bitmap of the chunks is replaced on every put
+        Thread reader = new Thread(new Runnable(){
+            @Override
+            public void run() {
+                try{
+                    while(written.get() < 2000){
+                        int done = written.get();
+                        for(int i = 0; i < done; i++){
+                            if(map.get("world", i * 16, 0, 0) == null)
+                                throw new AssertionError("missing block "+i);
+                            if(map.get("world", i * 16 + 1, 0, 0) != null)
+                                throw new AssertionError("unexpected block "+i);
+                        }
+                    }
+                }catch(Throwable e){
+                    failure.set(e);
+                }
+            }
+        });
+        reader.start();
+
+        for(int i = 0; i < 2000; i++){
+            map.put(new SimpleLocation(i % 2 == 0 ? "world" : "world_nether", i * 16, 0, 0), i);
+            map.put(new SimpleLocation("world", i * 16, 0, 0), i);
+            written.incrementAndGet();
+        }
+        reader.join(10000L);
+
+        assertNull(failure.get());
+        assertEquals(Integer.valueOf(1999), map.get("world", 1999 * 16, 0, 0));
+    }
+
+    @Test
+    public void testClear() {
+        BlockLocationMap<Integer> map = new BlockLocationMap<>();
+        map.put(new SimpleLocation("world", 1, 2, 3), 1);
+        map.clear();
+        assertEquals(0, map.entries().size());
+    }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ *     Copyright (C) 2018 wysohn
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package io.github.wysohn.triggerreactor.core.script.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.github.wysohn.triggerreactor.core.script.Token;
+import io.github.wysohn.triggerreactor.core.script.Token.Type;
+import io.github.wysohn.triggerreactor.core.script.interpreter.Executor;
+import io.github.wysohn.triggerreactor.core.script.interpreter.Interpreter;
+import io.github.wysohn.triggerreactor.core.script.lexer.Lexer;
+import io.github.wysohn.triggerreactor.core.script.parser.Parser;
+
+public class TestCompiler {
+    private Program compile(String text) throws Exception {
+        Lexer lexer = new Lexer(text, Charset.forName("UTF-8"));
+        Parser parser = new Parser(lexer);
+
+        return new Compiler(parser.parse()).compile();
+    }
+
+    @Test
+    public void testJumpTargets() throws Exception {
+        Program program = compile(""
+                + "FOR i = 0:3\n"
+                + "    IF i == 1 || i == 2\n"
+                + "        #MESSAGE i\n"
+                + "    ELSEIF i > 2\n"
+                + "        #STOP\n"
+                + "    ENDIF\n"
+                + "ENDFOR\n"
+                + "WHILE false\n"
+                + "ENDWHILE\n");
+
+        for(int i = 0; i < program.size(); i++){
+            switch(program.code[i]){
+            case Opcode.JUMP:
+            case Opcode.BRANCH_IF:
+            case Opcode.BRANCH_WHILE:
+            case Opcode.SHORT_AND:
+            case Opcode.SHORT_OR:
+            case Opcode.FOR_EACH_NEXT:
+            case Opcode.FOR_RANGE_NEXT:
+                assertTrue(program.toString(), program.operands[i] >= 0 && program.operands[i] <= program.size());
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void testExpressionStatement() throws Exception {
+        Program program = compile("list.add(1)\n");
+
+        assertEquals(Opcode.POP, program.code[program.size() - 1]);
+    }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        Program program = compile(""
+                + "ticks = 60*20\n"
+                + "str = \"prefix\" + \"suffix\" + 1\n"
+                + "bool = !(1 < 2.0) || -3 % 2 == -1\n");
+
+        List<Object> constants = new ArrayList<>();
+        for(int i = 0; i < program.size(); i++){
+            assertTrue(program.toString(), program.code[i] != Opcode.LITERAL);
+            if(program.code[i] == Opcode.PUSH && program.constants[i] instanceof Token
+                    && ((Token) program.constants[i]).type != Type.ID)
+                constants.add(((Token) program.constants[i]).value);
+        }
+
+        assertEquals(3, constants.size());
+        assertEquals(1200, constants.get(0));
+        assertEquals("prefixsuffix1", constants.get(1));
+        assertEquals(true, constants.get(2));
+    }
+
+    @Test
+    public void testNoFoldingOnError() throws Exception {
+        Program program = compile("x = 1/0\n");
+
+        boolean hasDivision = false;
+        for(int i = 0; i < program.size(); i++){
+            if(program.code[i] == Opcode.DIV)
+                hasDivision = true;
+        }
+        assertTrue(program.toString(), hasDivision);
+    }
+
+    @Test
+    public void testMaxStack() throws Exception {
+        assertEquals(0, compile("#STOP\n").maxStack);
+        assertEquals(1, compile("x = 1\n").maxStack);
+        assertEquals(3, compile("x = a + (b * c)\n").maxStack);
+        assertEquals(4, compile("#MESSAGE a, b, c + d\n").maxStack);
+        assertEquals(2, compile(""
+                + "FOR i = 0:3\n"
+                + "    x = i + 1\n"
+                + "ENDFOR\n").maxStack);
+    }
+
+    @Test
+    public void testSharedProgram() throws Exception {
+        Program program = compile(""
+                + "sum = 0\n"
+                + "FOR i = 0:5\n"
+                + "    sum = sum + i\n"
+                + "ENDFOR\n"
+                + "#RESULT sum\n");
+
+        List<Object> results = new ArrayList<>();
+        Map<String, Executor> executorMap = new HashMap<>();
+        executorMap.put("RESULT", new Executor(){
+            @Override
+            protected Integer execute(boolean sync, Object context, Object... args) throws Exception {
+                results.add(args[0]);
+                return null;
+            }
+        });
+
+        for(int i = 0; i < 2; i++){
+            Interpreter interpreter = new Interpreter(program, executorMap, new HashMap<>(), new HashMap<>(), new HashMap<>(), null);
+            interpreter.startWithContext(null);
+        }
+
+        assertEquals(2, results.size());
+        assertEquals(10, results.get(0));
+        assertEquals(10, results.get(1));
+    }
+}
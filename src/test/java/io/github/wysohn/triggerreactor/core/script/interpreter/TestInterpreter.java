@@ -13,7 +13,7 @@
  *
  *     You should have received a copy of the GNU General Public License
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
- *******************************************************************************/
+ *******************************************************************************/
 package io.github.wysohn.triggerreactor.core.script.interpreter;
 
 import static org.mockito.Mockito.mock;
@@ -34,9 +34,12 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import io.github.wysohn.triggerreactor.bukkit.manager.trigger.share.CommonFunctions;
+import io.github.wysohn.triggerreactor.core.script.compiler.Compiler;
+import io.github.wysohn.triggerreactor.core.script.compiler.Program;
 import io.github.wysohn.triggerreactor.core.script.lexer.Lexer;
 import io.github.wysohn.triggerreactor.core.script.parser.Node;
 import io.github.wysohn.triggerreactor.core.script.parser.Parser;
+import io.github.wysohn.triggerreactor.tools.MethodCallSite;
 import junit.framework.Assert;
 
 public class TestInterpreter {
@@ -912,6 +915,382 @@ public class TestInterpreter {
         interpreter.startWithContext(null);
     }
 
+    @Test
+    public void testLocalVariablesWhileRunning() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "x = 1;"
+                + "#SHARE;"
+                + "#TEST x + y;"
+                + "z = null;";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Node root = parser.parse();
+        Map<String, Object> localVars = new HashMap<>();
+        localVars.put("z", "removed");
+
+        Interpreter[] holder = new Interpreter[1];
+        Map<String, Executor> executorMap = new HashMap<>();
+        executorMap.put("SHARE", new Executor() {
+            @Override
+            protected Integer execute(boolean sync, Object context, Object... args) throws Exception {
+                //something like #CALL modifies variables of the caller
+                Map<String, Object> vars = holder[0].getVars();
+                Assert.assertEquals(1, vars.get("x"));
+                vars.put("y", 2);
+                vars.put("x", 5);
+                return null;
+            }
+        });
+        executorMap.put("TEST", new Executor() {
+            @Override
+            protected Integer execute(boolean sync, Object context, Object... args) throws Exception {
+                Assert.assertEquals(7, args[0]);
+                return null;
+            }
+        });
+
+        Interpreter interpreter = new Interpreter(root, executorMap, new HashMap<>(), new HashMap<String, Object>(), localVars, new CommonFunctions(null));
+        holder[0] = interpreter;
+
+        interpreter.startWithContext(null);
+
+        Assert.assertEquals(5, localVars.get("x"));
+        Assert.assertEquals(2, localVars.get("y"));
+        Assert.assertFalse(localVars.containsKey("z"));
+    }
+
+    @Test
+    public void testInterpreterPool() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "x = x + 1;"
+                + "IF x > 3;"
+                + "    #STOP;"
+                + "ENDIF;"
+                + "y = $TEST;";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Program program = new Compiler(parser.parse()).compile();
+        Map<String, Executor> executorMap = new HashMap<>();
+        Map<String, Placeholder> placeholderMap = new HashMap<>();
+        placeholderMap.put("TEST", new Placeholder() {
+            @Override
+            public Object parse(Object context, Object... args) throws Exception {
+                return "test";
+            }
+        });
+
+        InterpreterPool pool = new InterpreterPool(program, executorMap, placeholderMap, new HashMap<String, Object>(), new CommonFunctions(null));
+
+        Map<String, Object> first = new HashMap<>();
+        first.put("x", 5);
+        Interpreter interpreter = pool.acquire(first);
+        interpreter.startWithContext(null);
+        Assert.assertTrue(interpreter.isStopFlag());
+        pool.release(interpreter);
+
+        Map<String, Object> second = new HashMap<>();
+        second.put("x", 1);
+        Interpreter reused = pool.acquire(second);
+        Assert.assertSame(interpreter, reused);
+        Assert.assertFalse(reused.isStopFlag());
+        reused.startWithContext(null);
+        pool.release(reused);
+
+        Assert.assertEquals(6, first.get("x"));
+        Assert.assertFalse(first.containsKey("y"));
+        Assert.assertEquals(2, second.get("x"));
+        Assert.assertEquals("test", second.get("y"));
+    }
+
+    @Test
+    public void testMethodCallSite() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "a = obj.length();"
+                + "b = obj.substring(1, 3);";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Program program = new Compiler(parser.parse()).compile();
+
+        Object[] receivers = new Object[]{"hello", new StringBuilder("world"), "again"};
+        for(Object receiver : receivers){
+            Map<String, Object> vars = new HashMap<>();
+            vars.put("obj", receiver);
+
+            Interpreter interpreter = new Interpreter(program, new HashMap<String, Executor>(),
+                    new HashMap<String, Placeholder>(), new HashMap<String, Object>(), vars, new CommonFunctions(null));
+            interpreter.startWithContext(null);
+
+            Assert.assertEquals(5, vars.get("a"));
+            Assert.assertEquals(receiver.toString().substring(1, 3), vars.get("b"));
+        }
+
+        for(Object constant : program.constants){
+            if(constant instanceof MethodCallSite)
+                Assert.assertEquals(2, ((MethodCallSite) constant).size());
+        }
+    }
+
+    @Test
+    public void testPlaceholderCache() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "a = $activation;"
+                + "b = $activation;"
+                + "c = $ttl;"
+                + "d = $ttl:1;"
+                + "e = $global;";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Program program = new Compiler(parser.parse()).compile();
+
+        int[] counts = new int[3];
+        Map<String, Placeholder> placeholderMap = new HashMap<>();
+        placeholderMap.put("activation", new Placeholder() {
+            @Override
+            public Object parse(Object context, Object... args) throws Exception {
+                return ++counts[0];
+            }
+
+            @Override
+            public CachePolicy getCachePolicy() {
+                return CachePolicy.PER_ACTIVATION;
+            }
+        });
+        placeholderMap.put("ttl", new Placeholder() {
+            @Override
+            public Object parse(Object context, Object... args) throws Exception {
+                return ++counts[1];
+            }
+
+            @Override
+            public CachePolicy getCachePolicy() {
+                return CachePolicy.ttl(60000L);
+            }
+        });
+        placeholderMap.put("global", new Placeholder() {
+            @Override
+            public Object parse(Object context, Object... args) throws Exception {
+                return ++counts[2];
+            }
+
+            @Override
+            public CachePolicy getCachePolicy() {
+                return CachePolicy.ttlGlobal(60000L);
+            }
+        });
+
+        PlaceholderCache cache = new PlaceholderCache(PlaceholderCache.DEFAULT_MAX_SIZE, new java.util.function.Function<Object, Object>(){
+            @Override
+            public Object apply(Object context) {
+                return context;
+            }
+        });
+
+        for(int i = 0; i < 2; i++){
+            Map<String, Object> vars = new HashMap<>();
+            Interpreter interpreter = new Interpreter(program, new HashMap<String, Executor>(),
+                    placeholderMap, new HashMap<String, Object>(), vars, new CommonFunctions(null));
+            interpreter.setPlaceholderCache(cache);
+            interpreter.startWithContext("player");
+
+            //cached within the same activation only
+            Assert.assertEquals(i + 1, vars.get("a"));
+            Assert.assertEquals(i + 1, vars.get("b"));
+            //cached across the activations, separately for each argument
+            Assert.assertEquals(1, vars.get("c"));
+            Assert.assertEquals(2, vars.get("d"));
+            Assert.assertEquals(1, vars.get("e"));
+        }
+
+        //another player gets its own TTL values, but shares the global one
+        Map<String, Object> vars = new HashMap<>();
+        Interpreter interpreter = new Interpreter(program, new HashMap<String, Executor>(),
+                placeholderMap, new HashMap<String, Object>(), vars, new CommonFunctions(null));
+        interpreter.setPlaceholderCache(cache);
+        interpreter.startWithContext("other");
+        Assert.assertEquals(3, vars.get("c"));
+        Assert.assertEquals(1, vars.get("e"));
+
+        Assert.assertEquals(3, counts[0]);
+        Assert.assertEquals(4, counts[1]);
+        Assert.assertEquals(1, counts[2]);
+        Assert.assertEquals(7, cache.getHitCount());
+        Assert.assertEquals(8, cache.getMissCount());
+        Assert.assertEquals(5, cache.size());
+
+        Assert.assertEquals(CachePolicy.PER_ACTIVATION, CachePolicy.fromSource("// @cache activation\nfunction a(){}"));
+        Assert.assertEquals(1000L, CachePolicy.fromSource("// @cache 1000\nfunction a(){}").getTtl());
+        Assert.assertFalse(CachePolicy.fromSource("// @cache 1000\nfunction a(){}").isGlobal());
+        Assert.assertTrue(CachePolicy.fromSource("// @cache 1000 global\nfunction a(){}").isGlobal());
+        Assert.assertEquals(CachePolicy.NONE, CachePolicy.fromSource("function a(){}"));
+    }
+
+    @Test
+    public void testPlaceholderCacheFull() throws Exception{
+        PlaceholderCache cache = new PlaceholderCache(2, new java.util.function.Function<Object, Object>(){
+            @Override
+            public Object apply(Object context) {
+                return context;
+            }
+        });
+
+        PlaceholderCache.Key short1 = cache.createKey("short", null, new Object[]{1});
+        PlaceholderCache.Key long1 = cache.createKey("long", null, new Object[]{1});
+        PlaceholderCache.Key late = cache.createKey("late", null, new Object[]{1});
+
+        cache.put(short1, "s", 50L);
+        cache.put(long1, "l", 60000L);
+
+        //full, and nothing has expired yet
+        cache.put(late, "x", 60000L);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(PlaceholderCache.MISS, cache.get(late));
+
+        //the expired one makes room
+        Thread.sleep(100L);
+        cache.put(late, "x", 60000L);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("x", cache.get(late));
+        Assert.assertEquals("l", cache.get(long1));
+        Assert.assertSame(PlaceholderCache.MISS, cache.get(short1));
+
+        //replacing a cached value still works when full
+        cache.put(long1, "l2", 60000L);
+        Assert.assertEquals("l2", cache.get(long1));
+
+        cache.clear();
+        cache.put(short1, "s", 60000L);
+        Assert.assertEquals("s", cache.get(short1));
+    }
+
+    @Test
+    public void testFieldAccess() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "a = obj.hp;"
+                + "obj.hp = a * 2;"
+                + "b = obj.name;"
+                + "len = arr.length;"
+                + "arr[1] = b;"
+                + "c = arr[0];";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Node root = parser.parse();
+        Map<String, Object> vars = new HashMap<>();
+        Child child = new Child();
+        String[] arr = new String[]{"first", null};
+        vars.put("obj", child);
+        vars.put("arr", arr);
+
+        Interpreter interpreter = new Interpreter(root, new HashMap<String, Executor>(), new HashMap<String, Placeholder>(),
+                new HashMap<String, Object>(), vars, new CommonFunctions(null));
+        interpreter.startWithContext(null);
+
+        Assert.assertEquals(10, vars.get("a"));
+        Assert.assertEquals(20, child.hp);
+        Assert.assertEquals("child", vars.get("b"));
+        Assert.assertEquals(2, vars.get("len"));
+        Assert.assertEquals("child", arr[1]);
+        Assert.assertEquals("first", vars.get("c"));
+    }
+
+    public static class Parent {
+        public int hp = 10;
+    }
+
+    public static class Child extends Parent {
+        public String name = "child";
+    }
+
+    @Test
+    public void testWaitSuspends() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "x = 1;"
+                + "#WAIT 1.5;"
+                + "x = x + 1;"
+                + "#TEST x;";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Node root = parser.parse();
+        Map<String, Object> localVars = new HashMap<>();
+        Map<String, Executor> executorMap = new HashMap<>();
+        executorMap.put("TEST", new Executor() {
+            @Override
+            protected Integer execute(boolean sync, Object context, Object... args) throws Exception {
+                Assert.assertEquals(2, args[0]);
+                return null;
+            }
+        });
+
+        long[] delay = new long[]{-1};
+        Interpreter interpreter = new Interpreter(root, executorMap, new HashMap<>(), new HashMap<String, Object>(), localVars, new CommonFunctions(null));
+        interpreter.setWaitScheduler(new Interpreter.WaitScheduler() {
+            @Override
+            public void resumeLater(Interpreter interpreter, long mills) {
+                delay[0] = mills;
+            }
+        });
+
+        Assert.assertFalse(interpreter.run(null, null));
+        Assert.assertTrue(interpreter.isSuspended());
+        Assert.assertTrue(interpreter.isWaitFlag());
+        Assert.assertEquals(1500L, delay[0]);
+        Assert.assertEquals(1, interpreter.getVars().get("x"));
+
+        Assert.assertTrue(interpreter.resume());
+        Assert.assertFalse(interpreter.isSuspended());
+        Assert.assertEquals(2, localVars.get("x"));
+    }
+
+    @Test
+    public void testPrimitiveValues() throws Exception{
+        Charset charset = Charset.forName("UTF-8");
+        String text = "sum = 0;"
+                + "half = 0.0;"
+                + "FOR i = 0:10;"
+                + "    sum = sum + i * 2 % 7;"
+                + "    half = half + i / 2.0;"
+                + "ENDFOR;"
+                + "same = 1 == 1.0;"
+                + "#TEST sum, half, same, -sum < 0 && !(half >= 23), sum / 2.0;";
+
+        Lexer lexer = new Lexer(text, charset);
+        Parser parser = new Parser(lexer);
+
+        Node root = parser.parse();
+        Map<String, Object> localVars = new HashMap<>();
+        Map<String, Executor> executorMap = new HashMap<>();
+        executorMap.put("TEST", new Executor() {
+            @Override
+            protected Integer execute(boolean sync, Object context, Object... args) throws Exception {
+                Assert.assertEquals(27, args[0]);
+                Assert.assertEquals(22.5, args[1]);
+                Assert.assertEquals(false, args[2]);
+                Assert.assertEquals(true, args[3]);
+                Assert.assertEquals(13.5, args[4]);
+                return null;
+            }
+        });
+
+        Interpreter interpreter = new Interpreter(root, executorMap, new HashMap<>(), new HashMap<String, Object>(), localVars, new CommonFunctions(null));
+
+        interpreter.startWithContext(null);
+
+        Assert.assertEquals(27, localVars.get("sum"));
+        Assert.assertEquals(22.5, localVars.get("half"));
+        Assert.assertEquals(9, localVars.get("i"));
+    }
+
     private static class TheTest{
         public InTest in = new InTest();
         public InTest getTest(){